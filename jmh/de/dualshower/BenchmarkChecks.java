@@ -0,0 +1,116 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+
+/**
+ * Correctness checks run before a benchmark trial, a benchmark of a wrong evaluation or search is worthless.
+ * Every check covers the positions of a set and all their children.
+ */
+final class BenchmarkChecks {
+    private static final int SEARCH_DEPTH = 3;
+
+    private BenchmarkChecks() {
+    }
+
+    /**
+     * Gets a position set for a trial
+     * @param name : The name of the set, one of BenchmarkPositions.NAMES
+     * @return : The positions of the set
+     * @throws IllegalStateException : If the set does not hold BenchmarkPositions.SET_SIZE positions, the times per
+     *                                 position would be wrong then
+     */
+    static String[][] positions(String name) {
+        String[][] set = BenchmarkPositions.set(name);
+        if(set.length != BenchmarkPositions.SET_SIZE) {
+            throw new IllegalStateException("Position set " + name + " holds " + set.length + " positions instead of "
+                    + BenchmarkPositions.SET_SIZE);
+        }
+        return set;
+    }
+
+    /**
+     * Checks that the fast evaluations agree with Main.rateGameCube
+     * @param set : The positions to check
+     * @throws IllegalStateException : If an evaluation differs
+     */
+    static void verifyEvaluations(String[][] set) {
+        for(String[] position : set) {
+            GameCube cube = BenchmarkPositions.cube(position);
+            PIECE player = BenchmarkPositions.player(position);
+
+            verifyEvaluations(cube, player, position[0]);
+            for(int moves = cube.getLegalMoves(); moves != 0; moves &= moves - 1) {
+                int pillar = Integer.numberOfTrailingZeros(moves);
+                cube.makeMove(pillar, player);
+                verifyEvaluations(cube, player, position[0] + " + " + pillar);
+                cube.undoMove(pillar);
+            }
+        }
+    }
+
+    /**
+     * Checks that the fixed depth Search finds the move and score of Main.buildTree + Main.calculateScore +
+     * Main.getBestMove. Positions in which a line can be completed within the depth are left out, the tree plays on
+     * below a completed line and the search does not.
+     * @param set : The positions to check
+     * @throws IllegalStateException : If the search differs
+     */
+    static void verifySearch(String[][] set) {
+        Search search = new Search(new TranspositionTable(1));
+
+        for(String[] position : set) {
+            GameCube cube = BenchmarkPositions.cube(position);
+            PIECE player = BenchmarkPositions.player(position);
+
+            verifySearch(search, cube, player, position[0]);
+            for(int moves = cube.getLegalMoves(); moves != 0; moves &= moves - 1) {
+                int pillar = Integer.numberOfTrailingZeros(moves);
+                cube.makeMove(pillar, player);
+                verifySearch(search, cube, Search.opponent(player), position[0] + " + " + pillar);
+                cube.undoMove(pillar);
+            }
+        }
+    }
+
+    /**
+     * Compares the evaluations of a single position for both players
+     * @param cube : The position
+     * @param player : The player at turn
+     * @param name : The name of the position for the error message
+     * @throws IllegalStateException : If an evaluation differs
+     */
+    private static void verifyEvaluations(GameCube cube, PIECE player, String name) {
+        for(PIECE piece : new PIECE[] {player, Search.opponent(player)}) {
+            int expected = Main.rateGameCube(cube, piece);
+            if(TableEvaluation.rate(cube, piece) != expected || cube.evaluate(piece) != expected) {
+                throw new IllegalStateException("Evaluations differ from Main.rateGameCube in " + name);
+            }
+        }
+    }
+
+    /**
+     * Compares the fixed depth Search of a single position with the tree
+     * @param search : The search to use
+     * @param cube : The position
+     * @param player : The player at turn
+     * @param name : The name of the position for the error message
+     * @throws IllegalStateException : If the move or the score differs
+     */
+    private static void verifySearch(Search search, GameCube cube, PIECE player, String name) {
+        int depth = Math.min(SEARCH_DEPTH, 64 - cube.getPieceCount());
+        if(depth == 0 || Perft.perft(cube, player, depth, true) != Perft.perft(cube, player, depth, false)) {
+            return;
+        }
+
+        TreeNode root = new TreeNode(cube);
+        Main.buildTree(root, player, 0, depth);
+        int score = Main.calculateScore(root, player, true);
+        String move = Main.getBestMove(root);
+
+        SearchResult result = search.search(cube, player, depth);
+        if(result.getScore() != score || !result.getMoveString().equals(move)) {
+            throw new IllegalStateException("Search differs from Main.buildTree in " + name + ": " + result.getMoveString()
+                    + " " + result.getScore() + " instead of " + move + " " + score);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the evaluations: Main.rateGameCube with its parts, TableEvaluation and the incremental GameCube.evaluate.
+ * Every invocation runs on all positions of a set, the reported time is per position (and per line or slice).
+ * The evaluations are checked against Main.rateGameCube before every trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+    @Param({"opening", "midgame", "near-full"})
+    public String positions;
+
+    private GameCube[] cubes;
+    private PIECE[] players;
+    private PIECE[][][][] diagonalSlices;   //the 14 slices holding diagonals, per position
+
+    @Setup
+    public void setUp() {
+        String[][] set = BenchmarkChecks.positions(positions);
+        BenchmarkChecks.verifyEvaluations(set);
+
+        cubes = new GameCube[set.length];
+        players = new PIECE[set.length];
+        diagonalSlices = new PIECE[set.length][][][];
+        for(int i = 0; i < set.length; i++) {
+            cubes[i] = BenchmarkPositions.cube(set[i]);
+            players[i] = BenchmarkPositions.player(set[i]);
+
+            PIECE[][][] slices = new PIECE[14][][];
+            for(int dim = 0; dim < 4; dim++) {
+                slices[dim] = Main.sliceA(cubes[i], dim);
+                slices[4 + dim] = Main.sliceB(cubes[i], dim);
+                slices[8 + dim] = Main.sliceC(cubes[i], dim);
+            }
+            slices[12] = Main.sliceD(cubes[i], 0);
+            slices[13] = Main.sliceD(cubes[i], 1);
+            diagonalSlices[i] = slices;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkPositions.SET_SIZE)
+    public void rateGameCube(Blackhole blackhole) {
+        for(int i = 0; i < cubes.length; i++) {
+            blackhole.consume(Main.rateGameCube(cubes[i], players[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkPositions.SET_SIZE)
+    public void tableEvaluation(Blackhole blackhole) {
+        for(int i = 0; i < cubes.length; i++) {
+            blackhole.consume(TableEvaluation.rate(cubes[i], players[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkPositions.SET_SIZE)
+    public void evaluate(Blackhole blackhole) {
+        for(int i = 0; i < cubes.length; i++) {
+            blackhole.consume(cubes[i].evaluate(players[i]));
+        }
+    }
+
+    /**
+     * The 48 straight lines, per position
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkPositions.SET_SIZE)
+    public void checkObstruction(Blackhole blackhole) {
+        for(int i = 0; i < cubes.length; i++) {
+            for(int a = 0; a < 4; a++) {
+                for(int b = 0; b < 4; b++) {
+                    blackhole.consume(Main.checkObstruction(cubes[i], 0, 0, a, b, players[i]));
+                    blackhole.consume(Main.checkObstruction(cubes[i], 1, a, 0, b, players[i]));
+                    blackhole.consume(Main.checkObstruction(cubes[i], 2, a, b, 0, players[i]));
+                }
+            }
+        }
+    }
+
+    /**
+     * The 28 diagonals in prepared slices, per position
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkPositions.SET_SIZE)
+    public void checkObstructionDiagonal(Blackhole blackhole) {
+        for(int i = 0; i < cubes.length; i++) {
+            for(PIECE[][] slice : diagonalSlices[i]) {
+                blackhole.consume(Main.checkObstructionDiagonal(slice, players[i], 0));
+                blackhole.consume(Main.checkObstructionDiagonal(slice, players[i], 1));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4 * BenchmarkPositions.SET_SIZE)
+    public void sliceA(Blackhole blackhole) {
+        for(GameCube cube : cubes) {
+            for(int dim = 0; dim < 4; dim++) {
+                blackhole.consume(Main.sliceA(cube, dim));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4 * BenchmarkPositions.SET_SIZE)
+    public void sliceB(Blackhole blackhole) {
+        for(GameCube cube : cubes) {
+            for(int dim = 0; dim < 4; dim++) {
+                blackhole.consume(Main.sliceB(cube, dim));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4 * BenchmarkPositions.SET_SIZE)
+    public void sliceC(Blackhole blackhole) {
+        for(GameCube cube : cubes) {
+            for(int dim = 0; dim < 4; dim++) {
+                blackhole.consume(Main.sliceC(cube, dim));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2 * BenchmarkPositions.SET_SIZE)
+    public void sliceD(Blackhole blackhole) {
+        for(GameCube cube : cubes) {
+            blackhole.consume(Main.sliceD(cube, 0));
+            blackhole.consume(Main.sliceD(cube, 1));
+        }
+    }
+}
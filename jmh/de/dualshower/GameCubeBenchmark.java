@@ -0,0 +1,89 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the move generation of GameCube: copying a cube and placing and taking back pieces.
+ * Every invocation runs on all positions of a set, the reported time is per position.
+ * Run with "-prof gc" for the allocation per operation, e.g. the size of a clone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameCubeBenchmark {
+    @Param({"opening", "midgame", "near-full"})
+    public String positions;
+
+    private GameCube[] cubes;
+    private PIECE[] players;
+    private int[] firstPillars;     //the lowest pillar that is not full, per position
+
+    @Setup
+    public void setUp() {
+        String[][] set = BenchmarkChecks.positions(positions);
+
+        cubes = new GameCube[set.length];
+        players = new PIECE[set.length];
+        firstPillars = new int[set.length];
+        for(int i = 0; i < set.length; i++) {
+            cubes[i] = BenchmarkPositions.cube(set[i]);
+            players[i] = BenchmarkPositions.player(set[i]);
+            firstPillars[i] = Integer.numberOfTrailingZeros(cubes[i].getLegalMoves());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkPositions.SET_SIZE)
+    public void cloneCube(Blackhole blackhole) {
+        for(GameCube cube : cubes) {
+            blackhole.consume(cube.clone());
+        }
+    }
+
+    /**
+     * A single move through the checked placePiece of the original interface
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkPositions.SET_SIZE)
+    public void placePieceUndoMove(Blackhole blackhole) throws IllegalMoveException {
+        for(int i = 0; i < cubes.length; i++) {
+            int pillar = firstPillars[i];
+            cubes[i].placePiece(players[i], pillar % 4, pillar / 4);
+            blackhole.consume(cubes[i].getHash());
+            cubes[i].undoMove(pillar);
+        }
+    }
+
+    /**
+     * All legal moves of a position, as a search node generates them
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkPositions.SET_SIZE)
+    public void makeMoveUndoMoveAllPillars(Blackhole blackhole) {
+        for(int i = 0; i < cubes.length; i++) {
+            for(int moves = cubes[i].getLegalMoves(); moves != 0; moves &= moves - 1) {
+                int pillar = Integer.numberOfTrailingZeros(moves);
+                blackhole.consume(cubes[i].makeMove(pillar, players[i]));
+                cubes[i].undoMove(pillar);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of full searches: the TreeNode tree of Main and the fixed depth Search.
+ * Every invocation runs on all positions of a set, the reported time is per position.
+ * The Search is checked against the tree before every trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+    @Param({"opening", "midgame", "near-full"})
+    public String positions;
+
+    private GameCube[] cubes;
+    private PIECE[] players;
+    private TranspositionTable table;
+    private Search search;
+
+    @Setup
+    public void setUp() {
+        String[][] set = BenchmarkChecks.positions(positions);
+        BenchmarkChecks.verifySearch(set);
+
+        cubes = new GameCube[set.length];
+        players = new PIECE[set.length];
+        for(int i = 0; i < set.length; i++) {
+            cubes[i] = BenchmarkPositions.cube(set[i]);
+            players[i] = BenchmarkPositions.player(set[i]);
+        }
+
+        table = new TranspositionTable(1);
+        search = new Search(table);
+    }
+
+    /**
+     * Main.buildTree + Main.calculateScore to depth 3
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkPositions.SET_SIZE)
+    public void buildTree(Blackhole blackhole) {
+        for(int i = 0; i < cubes.length; i++) {
+            TreeNode root = new TreeNode(cubes[i]);
+            Main.buildTree(root, players[i], 0, 3);
+            blackhole.consume(Main.calculateScore(root, players[i], true));
+        }
+    }
+
+    /**
+     * Search.search to depth 5 with a cleared 1 MB table
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkPositions.SET_SIZE)
+    public void search(Blackhole blackhole) {
+        for(int i = 0; i < cubes.length; i++) {
+            table.clear();
+            blackhole.consume(search.search(cubes[i], players[i], Math.min(5, 64 - cubes[i].getPieceCount())));
+        }
+    }
+}
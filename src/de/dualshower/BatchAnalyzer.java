@@ -0,0 +1,174 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Analyses many positions in one JVM.
+ * Every input line holds a position in the format of Main (args[0]), the player at turn and optionally an id.
+ * The positions are searched concurrently on a fixed pool of workers, each worker keeps its own Search and table.
+ * Results are written as JSON Lines in input order. At most WINDOW_PER_THREAD * threads lines are in flight,
+ * so memory stays flat no matter how long the input is.
+ */
+public class BatchAnalyzer {
+    private static final int WINDOW_PER_THREAD = 4;
+
+    /**
+     * Main-function of the batch mode
+     * @param args : args[0]: optional input file, stdin if omitted or "-"
+     *               options: --threads=N  number of workers, defaults to the number of processors
+     *                        --time=MS    time budget per position, defaults to Main.DEFAULT_TIME_BUDGET
+     *                        --depth=N    search every position to a fixed depth instead of using a time budget
+     *                        --hash=MB    size of the transposition table per worker, defaults to TranspositionTable.DEFAULT_SIZE_MB
+     *                        --stats      add the statistics of every search to its result
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Options options = new Options(args);
+        String input = options.getArgument(0);
+        int threads = options.getInt("threads", Runtime.getRuntime().availableProcessors());
+        long timeBudget = options.getInt("time", (int) Main.DEFAULT_TIME_BUDGET);
+        int depth = options.getInt("depth", 0);
+        int hashSize = options.getInt("hash", TranspositionTable.DEFAULT_SIZE_MB);
+        boolean stats = options.has("stats");
+
+        BufferedReader reader = input == null || input.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : new BufferedReader(new FileReader(input));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(System.out));
+
+        ThreadLocal<Search> searches = ThreadLocal.withInitial(() -> new Search(new TranspositionTable(hashSize)));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<String>> pending = new ArrayDeque<Future<String>>();
+
+        String line;
+        long lineNumber = 0;
+        while((line = reader.readLine()) != null) {
+            lineNumber++;
+            if(line.trim().isEmpty()) {
+                continue;
+            }
+
+            final String request = line;
+            final String id = Long.toString(lineNumber);
+            pending.add(pool.submit(() -> analyse(request, id, searches.get(), timeBudget, depth, stats)));
+
+            //write finished results in order, wait for the oldest one once the window is full
+            while(!pending.isEmpty() && (pending.size() >= WINDOW_PER_THREAD * threads || pending.peek().isDone())) {
+                writeResult(writer, pending.poll());
+            }
+        }
+
+        while(!pending.isEmpty()) {
+            writeResult(writer, pending.poll());
+        }
+        writer.flush();
+
+        reader.close();
+        pool.shutdown();
+    }
+
+    /**
+     * Analyses a single input line
+     * @param line : "<position> <player> [id]"
+     * @param defaultId : The id to report if the line has none
+     * @param search : The Search of the current worker
+     * @param timeBudget : The time budget in milliseconds
+     * @param depth : The fixed depth, 0 to use the time budget
+     * @param stats : true to add the statistics of the search
+     * @return : The result as a line of JSON
+     */
+    private static String analyse(String line, String defaultId, Search search, long timeBudget, int depth, boolean stats) {
+        String[] fields = line.trim().split("\\s+");
+        String id = fields.length > 2 ? fields[2] : defaultId;
+
+        try {
+            if(fields.length < 2) {
+                throw new IllegalArgumentException("Expected '<position> <player> [id]'");
+            }
+
+            GameCube cube = new GameCube();
+            Main.inititializeCube(cube, fields[0]);
+            PIECE player = Main.parsePlayer(fields[1]);
+
+            long start = System.nanoTime();
+            SearchResult result;
+            boolean searched = true;
+            if(cube.isWon()) {
+                result = new SearchResult(-1, cube.evaluate(player), 0, 0);
+                searched = false;
+            }
+            else if(depth > 0) {
+                result = search.search(cube, player, Math.min(depth, 64 - cube.getPieceCount()));
+            }
+            else {
+                result = search.iterativeDeepening(cube, player, timeBudget);
+            }
+            long time = (System.nanoTime() - start) / 1000000;
+
+            return "{\"id\":" + quote(id)
+                    + ",\"move\":" + quote(result.getMoveString())
+                    + ",\"score\":" + result.getScore()
+                    + ",\"depth\":" + result.getDepth()
+                    + ",\"nodes\":" + result.getNodes()
+                    + ",\"timeMs\":" + time
+                    + (stats && searched ? ",\"stats\":" + search.getStats().toJson() : "") + "}";
+        }
+        catch(RuntimeException e) {
+            return "{\"id\":" + quote(id) + ",\"error\":" + quote(String.valueOf(e.getMessage())) + "}";
+        }
+    }
+
+    /**
+     * Waits for a result and writes it
+     * @param writer : The output
+     * @param result : The pending result
+     */
+    private static void writeResult(Writer writer, Future<String> result) throws IOException, InterruptedException {
+        try {
+            writer.write(result.get());
+        }
+        catch(ExecutionException e) {
+            writer.write("{\"error\":" + quote(String.valueOf(e.getCause())) + "}");
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * Encodes a String as a JSON string literal
+     * @param value : The String to encode
+     * @return : The quoted and escaped value
+     */
+    public static String quote(String value) {
+        StringBuilder builder = new StringBuilder("\"");
+
+        for(char c : value.toCharArray()) {
+            switch(c) {
+                case '"'  : builder.append("\\\""); break;
+                case '\\' : builder.append("\\\\"); break;
+                case '\n' : builder.append("\\n"); break;
+                case '\r' : builder.append("\\r"); break;
+                case '\t' : builder.append("\\t"); break;
+                default   :
+                    if(c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
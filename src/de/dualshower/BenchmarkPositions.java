@@ -0,0 +1,67 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+
+/**
+ * Fixed positions used by the benchmarks, so measurements of different versions can be compared.
+ * Every entry holds a position in the format of Main (args[0]) and the player at turn.
+ */
+public class BenchmarkPositions {
+    public static final int SET_SIZE = 3;   //positions per set, a benchmark operation runs on all of them
+
+    public static final String[][] OPENING = {
+            {"0", "1"},
+            {"0000000000012000000000000000000000000000000000000000000000000000", "1"},
+            {"2000210102010000000000000100000000000000000000000000000000000000", "2"},
+    };
+
+    public static final String[][] MIDGAME = {
+            {"0010020000101000002000000000200000000000000000000000000000000000", "1"},
+            {"2122021110122200010200000011100000000000000000000000000000000000", "2"},
+            {"1220211202212011010011200102200001000120000000000000000000000000", "2"},
+    };
+
+    public static final String[][] NEAR_FULL = {
+            {"1102112122121122100002122221121220000101210222210000010012012111", "2"},
+            {"2212211112121121112022011221121021102102202112100010020020010220", "2"},
+            {"2121112221122211212220221110210211212001102021011210100220201201", "1"},
+    };
+
+    public static final String[][][] ALL = {OPENING, MIDGAME, NEAR_FULL};
+    public static final String[] NAMES = {"opening", "midgame", "near-full"};
+
+    /**
+     * Gets a position set by its name
+     * @param name : One of NAMES
+     * @return : The positions of the set
+     * @throws IllegalArgumentException : If there is no set of that name
+     */
+    public static String[][] set(String name) {
+        for(int i = 0; i < NAMES.length; i++) {
+            if(NAMES[i].equals(name)) {
+                return ALL[i];
+            }
+        }
+        throw new IllegalArgumentException("Unknown position set: " + name);
+    }
+
+    /**
+     * Creates the cube of a benchmark position
+     * @param position : An entry of one of the position sets
+     * @return : A new GameCube holding the position
+     */
+    public static GameCube cube(String[] position) {
+        GameCube cube = new GameCube();
+        Main.inititializeCube(cube, position[0]);
+        return cube;
+    }
+
+    /**
+     * Gets the player at turn of a benchmark position
+     * @param position : An entry of one of the position sets
+     * @return : PLAYER_1 or PLAYER_2
+     */
+    public static PIECE player(String[] position) {
+        return Main.parsePlayer(position[1]);
+    }
+}
@@ -0,0 +1,134 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates an opening book: every position that can arise in the first plies of a game, starting with PLAYER_1, is
+ * reduced to its canonical form and searched to a fixed depth. The searches run in parallel, one Search with its own
+ * TranspositionTable per thread. The results are written in the format read by OpeningBook.
+ */
+public class BookGenerator {
+
+    /**
+     * Main-function of the generator
+     * @param args : args[0]: path of the book file to write
+     *               options: --plies=N    positions after 0 to N-1 moves are stored, defaults to 4
+     *                        --depth=N    search depth per position, defaults to 10
+     *                        --threads=N  number of threads, defaults to the number of processors
+     *                        --hash=MB    size of the transposition table per thread, defaults to TranspositionTable.DEFAULT_SIZE_MB
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Options options = new Options(args);
+        String path = options.getArgument(0);
+        int plies = options.getInt("plies", 4);
+        int depth = options.getInt("depth", 10);
+        int threads = options.getInt("threads", Runtime.getRuntime().availableProcessors());
+        int hashSize = options.getInt("hash", TranspositionTable.DEFAULT_SIZE_MB);
+
+        if(path == null) {
+            throw new IllegalArgumentException("Path of the book file is missing");
+        }
+
+        //collect the canonical positions
+        List<GameCube> positions = new ArrayList<GameCube>();
+        List<PIECE> players = new ArrayList<PIECE>();
+        collect(new GameCube(), PIECE.PLAYER_1, plies, new HashSet<Long>(), positions, players);
+        System.out.println(positions.size() + " positions in the first " + plies + " plies");
+
+        //search them on all threads
+        long start = System.nanoTime();
+        final long[] keys = new long[positions.size()];
+        final SearchResult[] results = new SearchResult[positions.size()];
+        final ThreadLocal<Search> searches = ThreadLocal.withInitial(() -> new Search(new TranspositionTable(hashSize)));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        for(int i = 0; i < positions.size(); i++) {
+            final int index = i;
+            pool.execute(() -> {
+                GameCube cube = positions.get(index);
+                PIECE player = players.get(index);
+                SearchResult result = searches.get().search(cube, player, Math.min(depth, 64 - cube.getPieceCount()));
+
+                keys[index] = Search.positionKey(cube, player);
+                results[index] = new SearchResult(GameCube.transformPillar(cube.getCanonicalSymmetry(), result.getMove(), false),
+                        result.getScore(), result.getDepth(), result.getNodes());
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+        write(path, plies, keys, results);
+        System.out.println("Book written to " + path + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Walks all move sequences up to the given number of plies and collects each canonical position once.
+     * Positions in which the game is already over are skipped.
+     * @param cube : The current position, unchanged after the call
+     * @param toMove : The player at turn
+     * @param plies : The number of plies left to play
+     * @param seen : The keys of all positions collected so far
+     * @param positions : Receives a copy of every new position
+     * @param players : Receives the player at turn of every new position
+     */
+    private static void collect(GameCube cube, PIECE toMove, int plies, Set<Long> seen, List<GameCube> positions, List<PIECE> players) {
+        if(plies == 0 || cube.isWon() || !seen.add(Search.positionKey(cube, toMove))) {
+            return;
+        }
+
+        positions.add(cube.clone());
+        players.add(toMove);
+
+        for(int pillar = 0; pillar < 16; pillar++) {
+            if(cube.canPlay(pillar)) {
+                cube.makeMove(pillar, toMove);
+                collect(cube, Search.opponent(toMove), plies - 1, seen, positions, players);
+                cube.undoMove(pillar);
+            }
+        }
+    }
+
+    /**
+     * Writes the results sorted by key
+     * @param path : The path of the book file
+     * @param plies : The number of plies the book covers
+     * @param keys : The position keys
+     * @param results : The search results, moves in canonical orientation
+     * @throws IOException : If the file cannot be written
+     */
+    private static void write(String path, int plies, long[] keys, SearchResult[] results) throws IOException {
+        Integer[] order = new Integer[keys.length];
+        for(int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(OpeningBook.VERSION);
+            out.writeInt(keys.length);
+            out.writeInt(plies);
+
+            for(int i : order) {
+                out.writeLong(keys[i]);
+                out.writeInt(results[i].getScore());
+                out.writeByte(results[i].getMove());
+                out.writeByte(results[i].getDepth());
+                out.writeShort(0);
+            }
+        }
+    }
+}
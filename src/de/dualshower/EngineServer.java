@@ -0,0 +1,254 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Long-running engine that answers requests over a line protocol, either on a local TCP port or on stdin/stdout.
+ * The JVM, the JIT-compiled code and the TranspositionTable stay warm across all requests and connections.
+ *
+ * Protocol, one command per line:
+ *   go <position> <player> <time>  starts a search, answered by "bestmove <x,y> score S depth D nodes N time T"
+ *   stop                           ends the running search of the connection early, it still sends its bestmove
+ *                                  before any later command is read
+ *   stats                          answered by "stats requests N p50 X p99 Y", latencies in milliseconds
+ *   quit                           closes the connection
+ * Errors are answered by "error <message>".
+ */
+public class EngineServer {
+    public static final int DEFAULT_PORT = 4567;
+
+    private final TranspositionTable table;
+    private final int threads;
+    private final LatencyStats latencies = new LatencyStats(10000);
+    private final ExecutorService workers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "engine-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates a new server
+     * @param table : The TranspositionTable shared by all requests
+     * @param threads : The number of search threads per request
+     */
+    public EngineServer(TranspositionTable table, int threads) {
+        this.table = table;
+        this.threads = threads;
+    }
+
+    /**
+     * Main-function of the server
+     * @param args : options: --port=N     TCP port on the loopback interface, defaults to DEFAULT_PORT
+     *                        --stdio      serve a single connection on stdin/stdout instead
+     *                        --threads=N  search threads per request, defaults to 1
+     *                        --hash=MB    size of the shared transposition table, defaults to TranspositionTable.DEFAULT_SIZE_MB
+     *                        --snapshot=FILE  table snapshot, loaded in the background at startup and saved on exit
+     *                        --snapshot-interval=S  also save the snapshot every S seconds, defaults to 300, 0 to save on exit only
+     */
+    public static void main(String[] args) throws IOException {
+        Options options = new Options(args);
+        TranspositionTable table = new TranspositionTable(options.getInt("hash", TranspositionTable.DEFAULT_SIZE_MB));
+        if(options.has("snapshot")) {
+            TableSnapshot snapshot = new TableSnapshot(table, options.get("snapshot", null));
+            snapshot.startLoading();
+            snapshot.saveOnShutdown();
+            if(options.getInt("snapshot-interval", 300) > 0) {
+                snapshot.savePeriodically(options.getInt("snapshot-interval", 300));
+            }
+        }
+        EngineServer server = new EngineServer(table, options.getInt("threads", 1));
+
+        if(options.has("stdio")) {
+            server.handle(new BufferedReader(new InputStreamReader(System.in)), new PrintWriter(System.out, true));
+        }
+        else {
+            server.serve(options.getInt("port", DEFAULT_PORT));
+        }
+    }
+
+    /**
+     * Accepts connections on the loopback interface until the process is ended, every connection gets its own thread
+     * @param port : The TCP port to listen on
+     * @throws IOException : If the port cannot be opened
+     */
+    public void serve(int port) throws IOException {
+        try(ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            while(true) {
+                Socket socket = serverSocket.accept();
+
+                workers.execute(() -> {
+                    try(Socket connection = socket) {
+                        handle(new BufferedReader(new InputStreamReader(connection.getInputStream())),
+                                new PrintWriter(new OutputStreamWriter(connection.getOutputStream()), true));
+                    }
+                    catch(IOException e) {
+                        //connection dropped, nothing to answer anymore
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Serves one connection until it sends quit or is closed
+     * @param in : The commands of the client
+     * @param out : The answers to the client, used by the search thread as well
+     * @throws IOException : If reading fails
+     */
+    public void handle(BufferedReader in, PrintWriter out) throws IOException {
+        ParallelSearch search = new ParallelSearch(threads, table);
+        Future<?> running = null;
+
+        try {
+            String line;
+            while((line = in.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+
+                switch(fields[0]) {
+                    case "go":
+                        if(running != null && !running.isDone()) {
+                            reply(out, "error search already running");
+                        }
+                        else if(fields.length < 4) {
+                            reply(out, "error expected: go <position> <player> <time>");
+                        }
+                        else {
+                            running = workers.submit(() -> go(search, fields[1], fields[2], fields[3], out));
+                        }
+                        break;
+                    case "stop":
+                        awaitStop(search, running);
+                        break;
+                    case "stats":
+                        reply(out, "stats requests " + latencies.getCount()
+                                + " p50 " + latencies.percentile(50) + " p99 " + latencies.percentile(99));
+                        break;
+                    case "quit":
+                        return;
+                    case "":
+                        break;
+                    default:
+                        reply(out, "error unknown command: " + fields[0]);
+                }
+            }
+        }
+        finally {
+            awaitStop(search, running);
+            search.shutdown();
+        }
+    }
+
+    /**
+     * Stops the running search of a connection and waits for it to answer.
+     * The stop is repeated until the search is done, since a search that had not started yet resets its stop flag.
+     * @param search : The search of the connection
+     * @param running : The task running the go command, null if there was none
+     */
+    private static void awaitStop(ParallelSearch search, Future<?> running) {
+        while(running != null && !running.isDone()) {
+            search.stop();
+            try {
+                running.get(1, TimeUnit.MILLISECONDS);
+            }
+            catch(TimeoutException e) {
+                //not done yet, stop again
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch(ExecutionException e) {
+                //the search already answered with an error
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs the search of a go command and answers with its result
+     * @param search : The search of the connection
+     * @param position : The position in the format of Main
+     * @param playerArg : '1' or '2'
+     * @param timeArg : The time budget in milliseconds
+     * @param out : The output of the connection
+     */
+    private void go(ParallelSearch search, String position, String playerArg, String timeArg, PrintWriter out) {
+        long start = System.nanoTime();
+
+        try {
+            GameCube cube = new GameCube();
+            Main.inititializeCube(cube, position);
+            PIECE player = Main.parsePlayer(playerArg);
+            long timeBudget = Long.parseLong(timeArg);
+
+            SearchResult result;
+            if(cube.isWon()) {
+                result = new SearchResult(-1, cube.evaluate(player), 0, 0);
+            }
+            else {
+                result = search.iterativeDeepening(cube, player, timeBudget);
+            }
+
+            long time = (System.nanoTime() - start) / 1000000;
+            latencies.record(time);
+
+            String move = result.getMove() < 0 ? "none" : result.getMoveString();
+            reply(out, "bestmove " + move + " score " + result.getScore() + " depth " + result.getDepth()
+                    + " nodes " + result.getNodes() + " time " + time);
+        }
+        catch(RuntimeException e) {
+            reply(out, "error " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sends a line to the client, the connection thread and the search thread both answer on the same output
+     * @param out : The output of the connection
+     * @param message : The line to send
+     */
+    private static void reply(PrintWriter out, String message) {
+        synchronized(out) {
+            out.println(message);
+        }
+    }
+
+    /**
+     * Sends a single go command to a running server, used by Main as a thin client
+     * @param address : host:port of the server
+     * @param position : The position in the format of Main
+     * @param player : '1' or '2'
+     * @param timeBudget : The time budget in milliseconds
+     * @return : The answer line of the server
+     * @throws IOException : If the server cannot be reached
+     */
+    public static String request(String address, String position, String player, long timeBudget) throws IOException {
+        int split = address.lastIndexOf(':');
+        String host = split < 0 ? address : address.substring(0, split);
+        int port = split < 0 ? DEFAULT_PORT : Integer.parseInt(address.substring(split + 1));
+
+        try(Socket socket = new Socket(host, port)) {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            out.println("go " + position + " " + player + " " + timeBudget);
+            String answer = in.readLine();
+            out.println("quit");
+            return answer;
+        }
+    }
+}
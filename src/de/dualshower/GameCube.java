@@ -3,20 +3,62 @@ package de.dualshower;
 import de.dualshower.Main.PIECE;
 import de.dualshower.IllegalMoveException;
 
+import java.util.Random;
+
 public class GameCube {
-    private PIECE[][][] pieces = new PIECE[4][4][4]; //column, row, height
+    /**
+     * Bitmasks of all 76 winning lines, in the same order in which Main.rateGameCube checks them
+     */
+    public static final long[] LINES = createLines();
+
+    /**
+     * For every cell the indices (into LINES) of all winning lines running through it
+     */
+    public static final int[][] LINES_THROUGH_CELL = createLinesThroughCell();
+
+    /**
+     * Zobrist keys for every combination of player and cell, [0] for PLAYER_1 and [1] for PLAYER_2
+     */
+    public static final long[][] ZOBRIST = createZobristKeys();
+
+    /**
+     * The 8 rotations and mirrors of the column/row plane as pillar permutations, [0] is the identity.
+     * They keep the pillars upright, so they map every legal position to an equivalent legal position.
+     */
+    public static final int[][] SYMMETRIES = createSymmetries();
+
+    private static final int[] INVERSE_SYMMETRY = {0, 1, 2, 3, 4, 6, 5, 7};
+
+    //XOR of the ZOBRIST keys of every combination of cells within a byte of a bitboard, [8 * player + byte][bits]
+    private static final long[][] ZOBRIST_BYTES = createZobristByteKeys();
+
+    private long player1;   //occupied cells of PLAYER_1, bit index = column + 4 * row + 16 * height
+    private long player2;   //occupied cells of PLAYER_2
+    private long heights;   //4 bits per pillar holding the number of pieces in it, pillar index = column + 4 * row
+    private long hash;      //Zobrist hash of the position
+
+    //the canonical hash is only needed when a table or book is probed, so it is computed on demand and kept until the next move
+    private long canonicalHash;
+    private int canonicalSymmetry = -1;     //-1 while canonicalHash is not computed yet
+
+    //incremental evaluation, updated with every placed piece for the lines running through its cell.
+    //The pieces per line are counted on the bitboards, so a clone copies no arrays.
+    private int score1 = 76;    //sum of the line scores of Main.checkObstruction for PLAYER_1
+    private int score2 = 76;    //sum of the line scores of Main.checkObstruction for PLAYER_2
+    private int wins1;          //number of completed lines of PLAYER_1
+    private int wins2;          //number of completed lines of PLAYER_2
+
+    //threats: empty cells that would complete a line of 3 own pieces without enemy pieces
+    private long threats1;  //threat cells of PLAYER_1
+    private long threats2;  //threat cells of PLAYER_2
 
     /**
      * Initializes the new GameCube to be completely empty
      */
     public GameCube() {
-        for(int a = 0; a < 4; a++) {
-            for(int b = 0; b < 4; b++) {
-                for(int c = 0; c < 4; c++) {
-                    pieces[a][b][c] = PIECE.EMPTY;
-                }
-            }
-        }
+        player1 = 0L;
+        player2 = 0L;
+        heights = 0L;
     }
 
     /**
@@ -27,17 +69,279 @@ public class GameCube {
      * @throws IllegalMoveException : If the vertical pillar is already full
      */
     public void placePiece(PIECE piece, int column, int row) throws IllegalMoveException {
-        int height;
-        //find the lowest possible positon in the pillar
-        for(height = 0; height < 4; height++) {
-            if(pieces[column][row][height] == PIECE.EMPTY) {
-                pieces[column][row][height] = piece;
-                return;
+        int pillar = column + 4 * row;
+
+        //no position left in the pillar, throw exception
+        if(!canPlay(pillar)) {
+            throw new IllegalMoveException("Piece could not be placed in pillar: <" + column +"," + row + ">");
+        }
+
+        //an empty piece does not occupy anything
+        if(piece == PIECE.EMPTY) {
+            return;
+        }
+
+        makeMove(pillar, piece);
+    }
+
+    /**
+     * Drops a piece into a pillar without any checks, the counterpart of undoMove
+     * @param pillar : The pillar index (column + 4 * row), must not be full
+     * @param piece : PLAYER_1 or PLAYER_2
+     * @return : The cell index that the piece landed on
+     */
+    public int makeMove(int pillar, PIECE piece) {
+        int shift = pillar << 2;
+        int cell = pillar + 16 * ((int) (heights >>> shift) & 0xF);
+
+        if(piece == PIECE.PLAYER_1) {
+            player1 |= 1L << cell;
+            updateHashes(cell, 0);
+            updateLines(cell, 0, 1);
+        }
+        else {
+            player2 |= 1L << cell;
+            updateHashes(cell, 1);
+            updateLines(cell, 1, 1);
+        }
+        heights += 1L << shift;
+
+        return cell;
+    }
+
+    /**
+     * Removes the topmost piece of a pillar, reverting the last makeMove on it
+     * @param pillar : The pillar index (column + 4 * row), must not be empty
+     */
+    public void undoMove(int pillar) {
+        int shift = pillar << 2;
+        heights -= 1L << shift;
+        int cell = pillar + 16 * ((int) (heights >>> shift) & 0xF);
+
+        if((player1 & (1L << cell)) != 0) {
+            player1 &= ~(1L << cell);
+            updateHashes(cell, 0);
+            updateLines(cell, 0, -1);
+        }
+        else {
+            player2 &= ~(1L << cell);
+            updateHashes(cell, 1);
+            updateLines(cell, 1, -1);
+        }
+    }
+
+    /**
+     * Checks if a piece can be dropped into a pillar
+     * @param pillar : The pillar index (column + 4 * row)
+     * @return : true if the pillar is not full
+     */
+    public boolean canPlay(int pillar) {
+        return ((heights >>> (pillar << 2)) & 0xF) != 4;
+    }
+
+    /**
+     * Gets all pillars that are not full
+     * @return : A 16 bit mask with bit i set if pillar i can be played
+     */
+    public int getLegalMoves() {
+        return (int) (~((player1 | player2) >>> 48)) & 0xFFFF;
+    }
+
+    /**
+     * Gets all pillars in which a player would complete a line with the next piece
+     * @param piece : The piece of the player
+     * @return : A 16 bit mask with bit i set if dropping piece into pillar i wins
+     */
+    public int getWinningMoves(PIECE piece) {
+        return toPillars(getThreats(piece) & getDropCells());
+    }
+
+    /**
+     * Gets the empty cells in which a player would complete a line, whether they can be played now or not.
+     * A threat directly above a drop cell becomes playable for the opponent as soon as that drop cell is filled.
+     * @param piece : The piece of the player
+     * @return : A bitmask of the threat cells
+     */
+    public long getThreats(PIECE piece) {
+        return piece == PIECE.PLAYER_1 ? threats1 : threats2;
+    }
+
+    /**
+     * Gets the cells the next piece of every pillar that is not full lands in
+     * @return : A bitmask with one cell per playable pillar
+     */
+    public long getDropCells() {
+        long occupied = player1 | player2;
+        return ((occupied << 16) | 0xFFFFL) & ~occupied;
+    }
+
+    /**
+     * Projects cells onto their pillars
+     * @param cells : A bitmask of cells
+     * @return : A 16 bit mask with bit i set if one of the cells lies in pillar i
+     */
+    public static int toPillars(long cells) {
+        return (int) (cells | cells >>> 16 | cells >>> 32 | cells >>> 48) & 0xFFFF;
+    }
+
+    /**
+     * Gets the cell a piece dropped into a pillar would land in
+     * @param pillar : The pillar index (column + 4 * row), must not be full
+     * @return : The cell index
+     */
+    public int getDropCell(int pillar) {
+        return pillar + 16 * ((int) (heights >>> (pillar << 2)) & 0xF);
+    }
+
+    /**
+     * Rates the cube from the view of a player in O(1) from the incrementally updated scores.
+     * The result is the same as the one of Main.rateGameCube.
+     * @param player : The piece that the player is using
+     * @return : MINUS_INFINITY if the player has lost, PLUS_INFINITY if the player has won, or score in between
+     */
+    public int evaluate(PIECE player) {
+        boolean first = player == PIECE.PLAYER_1;
+        int ownWins = first ? wins1 : wins2;
+        int otherWins = first ? wins2 : wins1;
+
+        if(ownWins == 0 && otherWins == 0) {
+            return first ? score1 : score2;
+        }
+        if(otherWins == 0) {
+            return Main.PLUS_INFINITY;
+        }
+        if(ownWins == 0) {
+            return Main.MINUS_INFINITY;
+        }
+
+        //both players have a line, Main.rateGameCube reports the first one it finds
+        long own = first ? player1 : player2;
+        long other = first ? player2 : player1;
+        for(long line : LINES) {
+            if((own & line) == line) return Main.PLUS_INFINITY;
+            if((other & line) == line) return Main.MINUS_INFINITY;
+        }
+        return first ? score1 : score2;
+    }
+
+    /**
+     * Checks if any player has completed a line
+     * @return : true if the game is over
+     */
+    public boolean isWon() {
+        return wins1 != 0 || wins2 != 0;
+    }
+
+    /**
+     * Toggles a piece in the hash
+     * @param cell : The cell index of the piece
+     * @param player : 0 for PLAYER_1, 1 for PLAYER_2
+     */
+    private void updateHashes(int cell, int player) {
+        hash ^= ZOBRIST[player][cell];
+        canonicalSymmetry = -1;
+    }
+
+    /**
+     * Updates scores, wins and threats for all lines through a cell, called after the bitboard has changed
+     * @param cell : The cell index of the piece
+     * @param player : 0 for PLAYER_1, 1 for PLAYER_2
+     * @param delta : 1 if the piece was placed, -1 if it was removed
+     */
+    private void updateLines(int cell, int player, int delta) {
+        int opponent = 1 - player;
+        long ownCells = player == 0 ? player1 : player2;
+        long otherCells = player == 0 ? player2 : player1;
+        int ownScore = 0;
+        int otherScore = 0;
+        int wins = 0;
+
+        for(int line : LINES_THROUGH_CELL[cell]) {
+            int newOwn = Long.bitCount(ownCells & LINES[line]);
+            int own = newOwn - delta;
+            int other = Long.bitCount(otherCells & LINES[line]);
+
+            ownScore += lineScore(newOwn, other) - lineScore(own, other);
+            otherScore += lineScore(other, newOwn) - lineScore(other, own);
+
+            if(own == 4) wins--;
+            if(newOwn == 4) wins++;
+
+            //a line is a threat while one player has 3 pieces in it and the other none, the threat is its empty cell
+            if(other == 0) {
+                if(own == 3) {
+                    removeThreat(player, delta > 0 ? 1L << cell : LINES[line] & ~ownCells & ~(1L << cell));
+                }
+                if(newOwn == 3) {
+                    addThreat(player, delta > 0 ? LINES[line] & ~ownCells : 1L << cell);
+                }
+            }
+            if(other == 3) {
+                if(own == 0) removeThreat(opponent, 1L << cell);
+                if(newOwn == 0) addThreat(opponent, 1L << cell);
+            }
+        }
+
+        if(player == 0) {
+            score1 += ownScore;
+            score2 += otherScore;
+            wins1 += wins;
+        }
+        else {
+            score2 += ownScore;
+            score1 += otherScore;
+            wins2 += wins;
+        }
+    }
+
+    /**
+     * Marks a threat cell
+     * @param player : 0 for PLAYER_1, 1 for PLAYER_2
+     * @param cell : The bit of the threat cell
+     */
+    private void addThreat(int player, long cell) {
+        if(player == 0) {
+            threats1 |= cell;
+        }
+        else {
+            threats2 |= cell;
+        }
+    }
+
+    /**
+     * Unmarks a cell whose line stopped being a threat, unless another line through it still is one.
+     * This looks at the bitboards after the change, so it is independent of the order in which the lines are updated.
+     * @param player : 0 for PLAYER_1, 1 for PLAYER_2
+     * @param cell : The bit of the former threat cell
+     */
+    private void removeThreat(int player, long cell) {
+        long own = player == 0 ? player1 : player2;
+        long other = player == 0 ? player2 : player1;
+
+        if(((player1 | player2) & cell) == 0) {
+            for(int line : LINES_THROUGH_CELL[Long.numberOfTrailingZeros(cell)]) {
+                if(((own | cell) & LINES[line]) == LINES[line] && (other & LINES[line]) == 0) {
+                    return;
+                }
             }
         }
 
-        //no position found, throw exception
-        throw new IllegalMoveException("Piece could not be placed in pillar: <" + column +"," + row + ">");
+        if(player == 0) {
+            threats1 &= ~cell;
+        }
+        else {
+            threats2 &= ~cell;
+        }
+    }
+
+    /**
+     * Score of a single line as calculated by Main.checkObstruction, without the win and loss cases
+     * @param own : The number of own pieces in the line
+     * @param other : The number of enemy pieces in the line
+     * @return : own + 1 if the line is not obstructed, 0 otherwise
+     */
+    private static int lineScore(int own, int other) {
+        return other == 0 ? own + 1 : 0;
     }
 
     /**
@@ -49,7 +353,261 @@ public class GameCube {
      */
     public PIECE getPiece(int column, int row, int height)
     {
-        return pieces[column][row][height];
+        long bit = 1L << cellIndex(column, row, height);
+
+        if((player1 & bit) != 0) return PIECE.PLAYER_1;
+        if((player2 & bit) != 0) return PIECE.PLAYER_2;
+        return PIECE.EMPTY;
+    }
+
+    /**
+     * returns the number of pieces in the pillar at <column, row>
+     * @param column : The column of the pillar
+     * @param row : The row of the pillar
+     * @return : The number of pieces in the pillar, 4 if it is full
+     */
+    public int getHeight(int column, int row) {
+        return (int) (heights >>> ((column + 4 * row) << 2)) & 0xF;
+    }
+
+    /**
+     * returns the number of pieces in the cube
+     * @return : The number of occupied cells
+     */
+    public int getPieceCount() {
+        return Long.bitCount(player1 | player2);
+    }
+
+    /**
+     * returns the occupancy bitboard of a player
+     * @param piece : The piece of the player
+     * @return : A bitboard with a bit set for every cell occupied by piece, see cellIndex for the layout
+     */
+    public long getBitboard(PIECE piece) {
+        switch(piece) {
+            case PLAYER_1 : return player1;
+            case PLAYER_2 : return player2;
+            default       : return ~(player1 | player2);
+        }
+    }
+
+    /**
+     * returns the Zobrist hash of the position
+     * @return : The XOR of the ZOBRIST keys of all placed pieces
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * returns the hash of the canonical form of the position, which is the same for all symmetric positions
+     * @return : The hash of the cube transformed by getCanonicalSymmetry
+     */
+    public long getCanonicalHash() {
+        getCanonicalSymmetry();
+        return canonicalHash;
+    }
+
+    /**
+     * returns the hash of the position after it is transformed by a symmetry
+     * @param symmetry : The index into SYMMETRIES
+     * @return : The Zobrist hash of the transformed cube
+     */
+    public long getSymmetricHash(int symmetry) {
+        if(symmetry == 0) {
+            return hash;
+        }
+        if(symmetry == canonicalSymmetry) {
+            return canonicalHash;
+        }
+        return hashBitboards(transform(player1, symmetry), transform(player2, symmetry), occupiedBytes());
+    }
+
+    /**
+     * Counts the bytes of the layers up to the highest piece, the symmetries keep every piece in its layer
+     * @return : The number of low bytes that hold pieces under every symmetry, 2 per layer
+     */
+    private int occupiedBytes() {
+        return ((79 - Long.numberOfLeadingZeros(player1 | player2)) >>> 4) << 1;
+    }
+
+    /**
+     * returns the symmetry that transforms the cube into its canonical form
+     * @return : The index into SYMMETRIES whose transformed bitboards are the smallest, compared as (player1, player2),
+     *           the lowest index if several are equal
+     */
+    public int getCanonicalSymmetry() {
+        if(canonicalSymmetry < 0) {
+            //the images of PLAYER_1 under all symmetries, see transform
+            long image1 = mirrorColumns(player1);
+            long image4 = mirrorDiagonal(player1);
+            long image5 = mirrorColumns(image4);
+
+            //the symmetries with the smallest image of PLAYER_1 as a bitmask
+            long min = player1;
+            int candidates = 1;
+            candidates = consider(candidates, min, image1, 1);
+            min = Math.min(min, image1);
+            long image = mirrorRows(player1);
+            candidates = consider(candidates, min, image, 2);
+            min = Math.min(min, image);
+            image = mirrorRows(image1);
+            candidates = consider(candidates, min, image, 3);
+            min = Math.min(min, image);
+            candidates = consider(candidates, min, image4, 4);
+            min = Math.min(min, image4);
+            candidates = consider(candidates, min, image5, 5);
+            min = Math.min(min, image5);
+            image = mirrorRows(image4);
+            candidates = consider(candidates, min, image, 6);
+            min = Math.min(min, image);
+            image = mirrorRows(image5);
+            candidates = consider(candidates, min, image, 7);
+            min = Math.min(min, image);
+
+            //PLAYER_2 decides between symmetries that map PLAYER_1 to the same cells
+            int best = Integer.numberOfTrailingZeros(candidates);
+            long best2 = transform(player2, best);
+            for(candidates &= candidates - 1; candidates != 0; candidates &= candidates - 1) {
+                int s = Integer.numberOfTrailingZeros(candidates);
+                long bits2 = transform(player2, s);
+                if(bits2 < best2) {
+                    best = s;
+                    best2 = bits2;
+                }
+            }
+
+            canonicalHash = best == 0 ? hash : hashBitboards(min, best2, occupiedBytes());
+            canonicalSymmetry = best;
+        }
+        return canonicalSymmetry;
+    }
+
+    /**
+     * Updates the set of symmetries with the smallest image of PLAYER_1
+     * @param candidates : The symmetries with the smallest image so far as a bitmask
+     * @param min : The smallest image so far
+     * @param image : The image under symmetry
+     * @param symmetry : The index into SYMMETRIES
+     * @return : The updated bitmask
+     */
+    private static int consider(int candidates, long min, long image, int symmetry) {
+        if(image < min) {
+            return 1 << symmetry;
+        }
+        return image == min ? candidates | 1 << symmetry : candidates;
+    }
+
+    /**
+     * Moves every piece of a bitboard to the pillar SYMMETRIES maps its pillar to, in all 4 layers at once.
+     * Symmetries 4 to 7 mirror at the main diagonal first, bit 0 of the index then mirrors the columns and bit 1 the rows.
+     * @param bits : The bitboard
+     * @param symmetry : The index into SYMMETRIES
+     * @return : The transformed bitboard
+     */
+    private static long transform(long bits, int symmetry) {
+        if((symmetry & 4) != 0) {
+            bits = mirrorDiagonal(bits);
+        }
+        if((symmetry & 1) != 0) {
+            bits = mirrorColumns(bits);
+        }
+        if((symmetry & 2) != 0) {
+            bits = mirrorRows(bits);
+        }
+        return bits;
+    }
+
+    /**
+     * Swaps column and row of every piece: first the cells within each 2x2 block, then the 2x2 blocks
+     * @param bits : The bitboard
+     * @return : The bitboard mirrored at the main diagonal
+     */
+    private static long mirrorDiagonal(long bits) {
+        long swap = ((bits >>> 3) ^ bits) & 0x0A0A0A0A0A0A0A0AL;
+        bits ^= swap ^ (swap << 3);
+        swap = ((bits >>> 6) ^ bits) & 0x00CC00CC00CC00CCL;
+        return bits ^ swap ^ (swap << 6);
+    }
+
+    /**
+     * Reverses the 4 cells of every row
+     * @param bits : The bitboard
+     * @return : The bitboard with mirrored columns
+     */
+    private static long mirrorColumns(long bits) {
+        bits = ((bits >>> 1) & 0x5555555555555555L) | ((bits & 0x5555555555555555L) << 1);
+        return ((bits >>> 2) & 0x3333333333333333L) | ((bits & 0x3333333333333333L) << 2);
+    }
+
+    /**
+     * Reverses the 4 rows of every layer
+     * @param bits : The bitboard
+     * @return : The bitboard with mirrored rows
+     */
+    private static long mirrorRows(long bits) {
+        bits = ((bits >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((bits & 0x0F0F0F0F0F0F0F0FL) << 4);
+        return ((bits >>> 8) & 0x00FF00FF00FF00FFL) | ((bits & 0x00FF00FF00FF00FFL) << 8);
+    }
+
+    /**
+     * Calculates the Zobrist hash of a position byte by byte
+     * @param player1 : The cells occupied by PLAYER_1
+     * @param player2 : The cells occupied by PLAYER_2
+     * @param bytes : The number of low bytes that hold pieces
+     * @return : The XOR of the ZOBRIST keys of all pieces
+     */
+    private static long hashBitboards(long player1, long player2, int bytes) {
+        long hash = 0L;
+
+        for(int b = 0; b < bytes; b++) {
+            hash ^= ZOBRIST_BYTES[b][(int) (player1 >>> (b << 3)) & 0xFF] ^ ZOBRIST_BYTES[8 + b][(int) (player2 >>> (b << 3)) & 0xFF];
+        }
+        return hash;
+    }
+
+    /**
+     * Maps a pillar into the canonical form and back
+     * @param symmetry : The index into SYMMETRIES, as returned by getCanonicalSymmetry
+     * @param pillar : The pillar index
+     * @param inverse : false to map from the cube to the canonical form, true for the other direction
+     * @return : The transformed pillar index
+     */
+    public static int transformPillar(int symmetry, int pillar, boolean inverse) {
+        return SYMMETRIES[inverse ? INVERSE_SYMMETRY[symmetry] : symmetry][pillar];
+    }
+
+    /**
+     * Checks if the player has completed any of the winning lines
+     * @param piece : The piece of the player to check
+     * @return : true if one of the 76 lines is completely occupied by piece
+     */
+    public boolean hasWon(PIECE piece) {
+        long bits = getBitboard(piece);
+
+        for(long line : LINES) {
+            if((bits & line) == line) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if one of the lines running through a cell is completely occupied by a player
+     * @param piece : The piece of the player to check
+     * @param cell : The cell index of the last placed piece
+     * @return : true if piece has completed a line through cell
+     */
+    public boolean hasWonThrough(PIECE piece, int cell) {
+        long bits = getBitboard(piece);
+
+        for(int line : LINES_THROUGH_CELL[cell]) {
+            if((bits & LINES[line]) == LINES[line]) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -59,19 +617,219 @@ public class GameCube {
     public GameCube clone() {
         GameCube clone = new GameCube();
 
+        clone.player1 = player1;
+        clone.player2 = player2;
+        clone.heights = heights;
+        clone.hash = hash;
+        clone.canonicalHash = canonicalHash;
+        clone.canonicalSymmetry = canonicalSymmetry;
+        clone.score1 = score1;
+        clone.score2 = score2;
+        clone.wins1 = wins1;
+        clone.wins2 = wins2;
+        clone.threats1 = threats1;
+        clone.threats2 = threats2;
+
+        return clone;
+    }
+
+    /**
+     * Creates a GameCube from the bitboards of both players, as returned by getBitboard
+     * @param player1 : The cells occupied by PLAYER_1
+     * @param player2 : The cells occupied by PLAYER_2
+     * @return : The new GameCube with all derived state
+     * @throws IllegalArgumentException : If a cell is occupied twice or a piece is floating above an empty cell
+     */
+    public static GameCube fromBitboards(long player1, long player2) {
+        GameCube cube = new GameCube();
+        cube.setBitboards(player1, player2);
+        return cube;
+    }
+
+    /**
+     * Replaces the position of this GameCube by the one given as bitboards, reusing this object
+     * @param player1 : The cells occupied by PLAYER_1
+     * @param player2 : The cells occupied by PLAYER_2
+     * @throws IllegalArgumentException : If a cell is occupied twice or a piece is floating above an empty cell,
+     *                                    the cube is empty then
+     */
+    public void setBitboards(long player1, long player2) {
+        this.player1 = 0L;
+        this.player2 = 0L;
+        heights = 0L;
+        hash = 0L;
+        canonicalSymmetry = -1;
+        score1 = 76;
+        score2 = 76;
+        wins1 = 0;
+        wins2 = 0;
+        threats1 = 0L;
+        threats2 = 0L;
+
+        if((player1 & player2) != 0) {
+            throw new IllegalArgumentException("Cell occupied by both players");
+        }
+        long occupied = player1 | player2;
+
+        //every piece must rest on the one below it
+        if((occupied & ~(occupied << 16) & ~0xFFFFL) != 0) {
+            throw new IllegalArgumentException("Floating piece in cell "
+                    + Long.numberOfTrailingZeros(occupied & ~(occupied << 16) & ~0xFFFFL));
+        }
+
+        //place layer by layer, so every piece falls onto the one below it
+        for(long cells = occupied; cells != 0; cells &= cells - 1) {
+            int cell = Long.numberOfTrailingZeros(cells);
+            makeMove(cell & 15, (player1 & (1L << cell)) != 0 ? PIECE.PLAYER_1 : PIECE.PLAYER_2);
+        }
+    }
+
+    /**
+     * Calculates the bit index of a cell in the bitboards
+     * @param column : The column of the cell
+     * @param row : The row of the cell
+     * @param height : The height of the cell
+     * @return : column + 4 * row + 16 * height
+     */
+    public static int cellIndex(int column, int row, int height) {
+        return column + 4 * row + 16 * height;
+    }
+
+    /**
+     * Creates the bitmask of a line of 4 cells
+     * @param column : The column of the first cell
+     * @param row : The row of the first cell
+     * @param height : The height of the first cell
+     * @param dColumn : The step in column direction
+     * @param dRow : The step in row direction
+     * @param dHeight : The step in height direction
+     * @return : The bitmask of the line
+     */
+    private static long line(int column, int row, int height, int dColumn, int dRow, int dHeight) {
+        long mask = 0L;
+
+        for(int i = 0; i < 4; i++) {
+            mask |= 1L << cellIndex(column + i * dColumn, row + i * dRow, height + i * dHeight);
+        }
+        return mask;
+    }
+
+    /**
+     * Builds the table of winning lines, following the iteration order of Main.rateGameCube
+     * @return : The 76 line masks
+     */
+    private static long[] createLines() {
+        long[] lines = new long[76];
+        int n = 0;
+
+        //straight lines
         for(int a = 0; a < 4; a++) {
             for(int b = 0; b < 4; b++) {
-                for(int c = 0; c < 4; c++) {
-                    try {
-                        clone.placePiece(pieces[a][b][c], a, b);
-                    }
-                    catch(IllegalMoveException e) {
-                        System.out.println("Error while cloning Cube: " + e.getMessage());
-                    }
-                }
+                lines[n++] = line(0, a, b, 1, 0, 0);
+                lines[n++] = line(a, 0, b, 0, 1, 0);
+                lines[n++] = line(a, b, 0, 0, 0, 1);
             }
         }
 
-        return clone;
+        //diagonals in the slices of constant column (sliceA), row (sliceB) and height (sliceC)
+        for(int i = 0; i < 4; i++) {
+            lines[n++] = line(i, 0, 0, 0, 1, 1);
+            lines[n++] = line(i, 0, 3, 0, 1, -1);
+        }
+        for(int i = 0; i < 4; i++) {
+            lines[n++] = line(0, i, 0, 1, 0, 1);
+            lines[n++] = line(0, i, 3, 1, 0, -1);
+        }
+        for(int i = 0; i < 4; i++) {
+            lines[n++] = line(0, 0, i, 1, 1, 0);
+            lines[n++] = line(3, 0, i, -1, 1, 0);
+        }
+
+        //space diagonals (sliceD)
+        lines[n++] = line(0, 3, 0, 1, -1, 1);
+        lines[n++] = line(0, 3, 3, 1, -1, -1);
+        lines[n++] = line(0, 0, 0, 1, 1, 1);
+        lines[n++] = line(0, 0, 3, 1, 1, -1);
+
+        return lines;
+    }
+
+    /**
+     * Builds the lookup table of lines per cell from LINES
+     * @return : For every cell index the indices of the lines through it
+     */
+    private static int[][] createLinesThroughCell() {
+        int[][] table = new int[64][];
+
+        for(int cell = 0; cell < 64; cell++) {
+            int count = 0;
+            for(long line : LINES) {
+                if((line & (1L << cell)) != 0) count++;
+            }
+
+            table[cell] = new int[count];
+            count = 0;
+            for(int i = 0; i < LINES.length; i++) {
+                if((LINES[i] & (1L << cell)) != 0) table[cell][count++] = i;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Creates the Zobrist keys from a fixed seed, so hashes are the same in every run
+     * @return : 2x64 random keys
+     */
+    private static long[][] createZobristKeys() {
+        Random random = new Random(0x4B4253L);
+        long[][] keys = new long[2][64];
+
+        for(int p = 0; p < 2; p++) {
+            for(int cell = 0; cell < 64; cell++) {
+                keys[p][cell] = random.nextLong();
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Builds the pillar permutations of the 4 rotations and 4 mirrors of the column/row plane
+     * @return : SYMMETRIES[s][pillar] is the pillar that pillar is mapped to by symmetry s
+     */
+    private static int[][] createSymmetries() {
+        int[][] symmetries = new int[8][16];
+
+        for(int column = 0; column < 4; column++) {
+            for(int row = 0; row < 4; row++) {
+                int pillar = column + 4 * row;
+                symmetries[0][pillar] = column + 4 * row;               //identity
+                symmetries[1][pillar] = (3 - column) + 4 * row;         //mirror columns
+                symmetries[2][pillar] = column + 4 * (3 - row);         //mirror rows
+                symmetries[3][pillar] = (3 - column) + 4 * (3 - row);   //rotate by 180 degrees
+                symmetries[4][pillar] = row + 4 * column;               //mirror at the main diagonal
+                symmetries[5][pillar] = (3 - row) + 4 * column;         //rotate by 90 degrees
+                symmetries[6][pillar] = row + 4 * (3 - column);         //rotate by 270 degrees
+                symmetries[7][pillar] = (3 - row) + 4 * (3 - column);   //mirror at the anti-diagonal
+            }
+        }
+        return symmetries;
+    }
+
+    /**
+     * Combines the ZOBRIST keys of the cells of every byte of a bitboard
+     * @return : The keys indexed by [8 * player + byte][bits of the byte]
+     */
+    private static long[][] createZobristByteKeys() {
+        long[][] keys = new long[16][256];
+
+        for(int p = 0; p < 2; p++) {
+            for(int b = 0; b < 8; b++) {
+                for(int bits = 1; bits < 256; bits++) {
+                    int low = Integer.numberOfTrailingZeros(bits);
+                    keys[8 * p + b][bits] = keys[8 * p + b][bits & (bits - 1)] ^ ZOBRIST[p][8 * b + low];
+                }
+            }
+        }
+        return keys;
     }
 }
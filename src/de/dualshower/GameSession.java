@@ -0,0 +1,351 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps a game alive across moves, so the engine can think on the opponent's time.
+ * After the engine has played its move, the session predicts the opponent's reply and searches the position after it
+ * in the background (pondering). If the opponent plays the predicted move (ponderhit), the next think() continues
+ * that search for its time budget instead of starting over. Any other move stops the background search at once.
+ * The TranspositionTable is kept for the whole game, so the subtree of the move that was actually played is still in
+ * it. Every search continues at the depth the table holds for the new position instead of starting at depth 1, while
+ * the entries of the other moves age out and are overwritten.
+ *
+ * Protocol of the stdin/stdout mode, one command per line:
+ *   new <position> <player>  starts a game at a position in the format of Main with player at turn
+ *   go <time>                the engine moves for the player at turn, answered by
+ *                            "bestmove <x,y> score S depth D nodes N time T ponder <x,y>", none if there is no move
+ *   move <x,y>               the opponent's move, answered by "ok ponderhit", "ok pondermiss" or "ok"
+ *   quit                     ends the session
+ * Errors are answered by "error <message>".
+ */
+public class GameSession {
+    private final ParallelSearch search;
+    private final boolean pondering;
+    private final ExecutorService ponderThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ponder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private GameCube cube = new GameCube();
+    private PIECE toMove = PIECE.PLAYER_1;
+
+    private Future<SearchResult> ponder;   //the running background search, null if there is none
+    private int ponderMove = -1;            //the predicted reply the background search is based on
+    private boolean ponderHit;              //true once the opponent played ponderMove
+
+    /**
+     * Creates a new session
+     * @param threads : The number of search threads
+     * @param table : The TranspositionTable kept for the whole session
+     * @param pondering : true to search on the opponent's time
+     */
+    public GameSession(int threads, TranspositionTable table, boolean pondering) {
+        this.search = new ParallelSearch(threads, table);
+        this.pondering = pondering;
+    }
+
+    /**
+     * Main-function of the stdin/stdout mode
+     * @param args : options: --threads=N  number of search threads, defaults to 1
+     *                        --hash=MB    size of the transposition table, defaults to TranspositionTable.DEFAULT_SIZE_MB
+     *                        --no-ponder  do not search on the opponent's time
+     *                        --snapshot=FILE  table snapshot, loaded in the background at startup and saved on exit
+     */
+    public static void main(String[] args) throws IOException {
+        Options options = new Options(args);
+        TranspositionTable table = new TranspositionTable(options.getInt("hash", TranspositionTable.DEFAULT_SIZE_MB));
+        if(options.has("snapshot")) {
+            TableSnapshot snapshot = new TableSnapshot(table, options.get("snapshot", null));
+            snapshot.startLoading();
+            snapshot.saveOnShutdown();
+        }
+        GameSession session = new GameSession(options.getInt("threads", 1), table, !options.has("no-ponder"));
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        PrintWriter out = new PrintWriter(System.out, true);
+
+        try {
+            String line;
+            while((line = in.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+
+                try {
+                    switch(fields[0]) {
+                        case "new":
+                            if(fields.length < 3) {
+                                throw new IllegalArgumentException("expected: new <position> <player>");
+                            }
+                            GameCube start = new GameCube();
+                            Main.inititializeCube(start, fields[1]);
+                            session.newGame(start, Main.parsePlayer(fields[2]));
+                            out.println("ok");
+                            break;
+                        case "go":
+                            if(fields.length < 2) {
+                                throw new IllegalArgumentException("expected: go <time>");
+                            }
+                            long begin = System.nanoTime();
+                            SearchResult result = session.think(Long.parseLong(fields[1]));
+                            out.println("bestmove " + moveString(result.getMove()) + " score " + result.getScore()
+                                    + " depth " + result.getDepth() + " nodes " + result.getNodes()
+                                    + " time " + (System.nanoTime() - begin) / 1000000
+                                    + " ponder " + moveString(session.getPonderMove()));
+                            break;
+                        case "move":
+                            if(fields.length < 2) {
+                                throw new IllegalArgumentException("expected: move <x,y>");
+                            }
+                            boolean pondered = session.getPonderMove() >= 0;
+                            session.opponentMove(parseMove(fields[1]));
+                            out.println(!pondered ? "ok" : session.isPonderHit() ? "ok ponderhit" : "ok pondermiss");
+                            break;
+                        case "quit":
+                            return;
+                        case "":
+                            break;
+                        default:
+                            throw new IllegalArgumentException("unknown command: " + fields[0]);
+                    }
+                }
+                catch(RuntimeException e) {
+                    out.println("error " + e.getMessage());
+                }
+            }
+        }
+        finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Starts a new game, a running background search is stopped
+     * @param start : The position to start from
+     * @param player : The player at turn
+     */
+    public void newGame(GameCube start, PIECE player) {
+        stopPondering();
+        cube = start.clone();
+        toMove = player;
+    }
+
+    /**
+     * Lets the engine move for the player at turn, plays the move and starts pondering on the opponent's time
+     * @param timeBudget : The time budget in milliseconds
+     * @return : The engine's move, -1 as move if the game is over
+     */
+    public SearchResult think(long timeBudget) {
+        SearchResult result;
+
+        if(cube.isWon() || cube.getLegalMoves() == 0) {
+            stopPondering();
+            return new SearchResult(-1, cube.evaluate(toMove), 0, 0);
+        }
+
+        if(ponder != null && ponderHit) {
+            //the background search already runs on this position, it gets the time budget on top
+            result = finish(ponder, timeBudget);
+            ponder = null;
+        }
+        else {
+            stopPondering();
+            result = search.iterativeDeepening(cube, toMove, timeBudget, retainedDepth(cube, toMove));
+        }
+
+        ponderMove = -1;
+        ponderHit = false;
+        if(result.getMove() >= 0) {
+            cube.makeMove(result.getMove(), toMove);
+            toMove = Search.opponent(toMove);
+            startPondering();
+        }
+        return result;
+    }
+
+    /**
+     * Plays the opponent's move. A background search on another move is stopped, one on this move keeps running.
+     * @param pillar : The pillar index of the move
+     * @throws IllegalArgumentException : If the move is not legal
+     */
+    public void opponentMove(int pillar) {
+        if(pillar < 0 || pillar > 15 || !cube.canPlay(pillar) || cube.isWon()) {
+            throw new IllegalArgumentException("illegal move");
+        }
+
+        if(ponder != null && pillar == ponderMove) {
+            ponderHit = true;
+        }
+        else {
+            stopPondering();
+        }
+
+        cube.makeMove(pillar, toMove);
+        toMove = Search.opponent(toMove);
+    }
+
+    /**
+     * Gets the predicted reply the engine is pondering on
+     * @return : the pillar index, -1 if the engine is not pondering
+     */
+    public int getPonderMove() {
+        return ponderMove;
+    }
+
+    /**
+     * Checks if the opponent played the predicted reply
+     * @return : true after a ponderhit, until the engine has moved
+     */
+    public boolean isPonderHit() {
+        return ponderHit;
+    }
+
+    /**
+     * Gets the current position
+     * @return : a copy of the cube
+     */
+    public GameCube getCube() {
+        return cube.clone();
+    }
+
+    /**
+     * Gets the player at turn
+     * @return : the player at turn
+     */
+    public PIECE getToMove() {
+        return toMove;
+    }
+
+    /**
+     * Stops pondering and releases all threads
+     */
+    public void close() {
+        stopPondering();
+        ponderThread.shutdownNow();
+        search.shutdown();
+    }
+
+    /**
+     * Predicts the opponent's reply and starts searching the position after it in the background
+     */
+    private void startPondering() {
+        if(!pondering || cube.isWon() || cube.getLegalMoves() == 0) {
+            return;
+        }
+
+        //the engine's search has stored the expected reply in the table, from the engine's view
+        PIECE engine = Search.opponent(toMove);
+        ponderMove = Search.tableMove(search.getTable(), cube, engine, toMove);
+        if(ponderMove < 0) {
+            ponderMove = Integer.numberOfTrailingZeros(cube.getLegalMoves());
+        }
+
+        GameCube expected = cube.clone();
+        int cell = expected.makeMove(ponderMove, toMove);
+        if(expected.hasWonThrough(toMove, cell) || expected.getLegalMoves() == 0) {
+            ponderMove = -1;
+            return;
+        }
+
+        int firstDepth = retainedDepth(expected, engine);
+        ponder = ponderThread.submit(() -> search.ponder(expected, engine, firstDepth));
+    }
+
+    /**
+     * Gets the depth the table already holds for a position searched by the engine
+     * @param position : The position
+     * @param engine : The player the engine moves for, at turn in position
+     * @return : the stored depth, at least 2
+     */
+    private int retainedDepth(GameCube position, PIECE engine) {
+        return Math.max(2, Search.tableDepth(search.getTable(), position, engine, engine));
+    }
+
+    /**
+     * Stops the background search and waits until all its threads are idle
+     */
+    private void stopPondering() {
+        if(ponder != null) {
+            finish(ponder, 0);
+            ponder = null;
+        }
+        ponderMove = -1;
+        ponderHit = false;
+    }
+
+    /**
+     * Lets a background search run for a while longer, then stops it and collects its result.
+     * The stop is repeated until the search is done, since a search that has not started yet resets its stop flag.
+     * @param future : The background search
+     * @param timeBudget : The time in milliseconds the search may still run
+     * @return : the result of the search
+     */
+    private SearchResult finish(Future<SearchResult> future, long timeBudget) {
+        long deadline = System.nanoTime() + timeBudget * 1000000L;
+
+        try {
+            while(true) {
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0) {
+                    search.stop();
+                }
+
+                try {
+                    return future.get(Math.max(remaining, 1000000L), TimeUnit.NANOSECONDS);
+                }
+                catch(TimeoutException e) {
+                    //still searching, check the time again
+                }
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            search.stop();
+            return new SearchResult(-1, 0, 0, 0);
+        }
+        catch(ExecutionException e) {
+            throw new RuntimeException("Pondering failed", e.getCause());
+        }
+    }
+
+    /**
+     * Formats a pillar index in the output format of Main
+     * @param pillar : The pillar index
+     * @return : <x,y>, none for -1
+     */
+    private static String moveString(int pillar) {
+        return pillar < 0 ? "none" : new SearchResult(pillar, 0, 0, 0).getMoveString();
+    }
+
+    /**
+     * Parses a move in the output format of Main
+     * @param move : <x,y> or x,y
+     * @return : the pillar index
+     * @throws IllegalArgumentException : If the move cannot be parsed
+     */
+    static int parseMove(String move) {
+        String[] coordinates = move.replace("<", "").replace(">", "").split(",");
+        try {
+            int x = Integer.parseInt(coordinates[0].trim());
+            int y = Integer.parseInt(coordinates[1].trim());
+            if(x < 0 || x > 3 || y < 0 || y > 3) {
+                throw new IllegalArgumentException("move out of range: " + move);
+            }
+            return x + 4 * y;
+        }
+        catch(NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("expected a move like <x,y>: " + move);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package de.dualshower;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event covering one completed iteration of an iterative deepening search
+ */
+@Name("de.dualshower.Iteration")
+@Label("Search Iteration")
+@Category("Connect Four")
+@Description("One completed depth of an iterative deepening search")
+public class IterationEvent extends Event {
+    @Label("Depth")
+    int depth;
+
+    @Label("Nodes")
+    @Description("Nodes visited in this iteration")
+    long nodes;
+
+    @Label("Best Move")
+    int move;
+
+    @Label("Score")
+    int score;
+}
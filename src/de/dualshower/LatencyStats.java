@@ -0,0 +1,53 @@
+package de.dualshower;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latencies of the most recent requests in a ring buffer and reports percentiles over them
+ */
+public class LatencyStats {
+    private final long[] samples;
+    private long count;     //number of recorded samples, including the ones that were overwritten
+
+    /**
+     * Creates new, empty statistics
+     * @param capacity : The number of most recent samples to keep
+     */
+    public LatencyStats(int capacity) {
+        samples = new long[capacity];
+    }
+
+    /**
+     * Records the latency of a request
+     * @param millis : The latency in milliseconds
+     */
+    public synchronized void record(long millis) {
+        samples[(int) (count % samples.length)] = millis;
+        count++;
+    }
+
+    /**
+     * Gets the total number of recorded requests
+     * @return : the number of calls of record
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Calculates a percentile over the kept samples
+     * @param percent : The percentile, between 0 and 100
+     * @return : The latency in milliseconds, 0 if nothing was recorded yet
+     */
+    public synchronized long percentile(double percent) {
+        int size = (int) Math.min(count, samples.length);
+        if(size == 0) {
+            return 0;
+        }
+
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percent / 100 * size) - 1;
+        return sorted[Math.max(0, Math.min(size - 1, index))];
+    }
+}
@@ -1,11 +1,13 @@
 package de.dualshower;
 
+import java.io.IOException;
+
 public class Main {
 
     public static final int PLUS_INFINITY   = 100000;
     public static final int MINUS_INFINITY  = -100000;
 
-    public static final int MAX_DEPTH = 3;
+    public static final long DEFAULT_TIME_BUDGET = 1000; //milliseconds per move if args[2] is omitted
 
     public enum PIECE {EMPTY, PLAYER_1, PLAYER_2}
 
@@ -15,23 +17,37 @@ public class Main {
      * @param args : args[0]: String of 1 to 64 characters( allowed are 0, 1, 2) representing the initial state of the Game
      *                        trailing zeros can be omitted.
      *               args[1]: either '1' or '2' - indicates the player at turn
+     *               args[2]: optional time budget for the search in milliseconds, defaults to DEFAULT_TIME_BUDGET
+     *               options: --threads=N   number of search threads, defaults to 1
+     *                        --hash=MB     size of the transposition table, defaults to TranspositionTable.DEFAULT_SIZE_MB
+     *                        --book=FILE   opening book written by BookGenerator, probed before searching
+     *                        --server=HOST:PORT  let a running EngineServer search instead of this process
+     *                        --stats       print the statistics of the search as JSON after the best move
+     *                        --tablebase=FILE  endgame tablebase written by TablebaseGenerator, probed before searching
+     *                        --solve       try to prove a forced win with a ProofSearch before searching
+     *                        --solve-nodes=N  node limit of the ProofSearch, defaults to ProofSearch.DEFAULT_MAX_NODES
+     *                        --engine=E    "alphabeta" for the Search (default) or "mcts" for the MctsSearch
+     *                        --playouts=N  playout limit of the MctsSearch on top of the time budget
+     *                        --tree=MB     memory of the MctsSearch tree, defaults to MctsSearch.DEFAULT_SIZE_MB
+     *                        --snapshot=FILE  table snapshot, loaded in the background while searching and saved on exit
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        Options options = new Options(args);
         GameCube initialState = new GameCube();
         PIECE player;
 
         //parse args[0] to initialize GameCube
-        inititializeCube(initialState, args[0]);
+        inititializeCube(initialState, options.getArgument(0));
 
+        player = parsePlayer(options.getArgument(1));
 
-        switch(args[1].toCharArray()[0]) {
-            case '1' : player = PIECE.PLAYER_1; break;
-            case '2' : player = PIECE.PLAYER_2; break;
-            default  : throw new IllegalArgumentException("Second Argument must be '1' or '2'");
+        long timeBudget = DEFAULT_TIME_BUDGET;
+        if(options.getArgumentCount() > 2) {
+            timeBudget = Long.parseLong(options.getArgument(2));
         }
 
         //check initial state for win or loose conditions, skip calculation if found
-        int initialScore = rateGameCube(initialState, player);
+        int initialScore = TableEvaluation.rate(initialState, player);
         if(initialScore == PLUS_INFINITY) {
             System.out.println("ALREADY WON");
             return;
@@ -41,16 +57,91 @@ public class Main {
             return;
         }
 
-        //initial state will be root of the state-tree
-        TreeNode root = new TreeNode(initialState);
-        //Build up the tree to the desired DEPTH
-        buildTree(root, player, 0, MAX_DEPTH);
-        //populate the nodes of the tree with their corresponding scores
-        calculateScore(root, player, true);
-        //retrieve the best possible move from the tree
-        String bestMove = getBestMove(root);
+        //positions from the opening book are answered without searching
+        if(options.has("book")) {
+            SearchResult bookMove = new OpeningBook(options.get("book", null)).probe(initialState, player);
+            if(bookMove != null) {
+                System.out.println("Best move: " + bookMove.getMoveString());
+                return;
+            }
+        }
+
+        //endgame positions in the tablebase are answered with perfect play
+        if(options.has("tablebase")) {
+            SearchResult perfectMove = new Tablebase(options.get("tablebase", null)).probe(initialState, player);
+            if(perfectMove != null) {
+                System.out.println("Best move: " + perfectMove.getMoveString());
+                return;
+            }
+        }
+
+        //a proven win is played along its winning line, otherwise the heuristic search decides
+        if(options.has("solve")) {
+            ProofSearch solver = new ProofSearch(options.getInt("hash", TranspositionTable.DEFAULT_SIZE_MB));
+            ProofResult proof = solver.solve(initialState, player, options.getInt("solve-nodes", (int) ProofSearch.DEFAULT_MAX_NODES));
+            if(proof.getStatus() == ProofResult.Status.PROVEN) {
+                System.out.println("Best move: " + proof.getMoveString());
+                System.out.println("Winning line: " + proof.getLineString());
+                return;
+            }
+        }
+
+        //act as a thin client of a warm EngineServer
+        if(options.has("server")) {
+            String answer = EngineServer.request(options.get("server", null), options.getArgument(0), options.getArgument(1), timeBudget);
+            if(answer == null || !answer.startsWith("bestmove ")) {
+                throw new IOException("Engine server failed: " + answer);
+            }
+
+            String move = answer.split(" ")[1];
+            System.out.println("Best move: " + (move.equals("none") ? "" : move));
+            return;
+        }
+
+        //alternatively, sample the game tree with playouts until the time budget is used up
+        if(options.get("engine", "alphabeta").equals("mcts")) {
+            MctsSearch mcts = new MctsSearch(options.getInt("tree", MctsSearch.DEFAULT_SIZE_MB), options.getInt("threads", 1));
+            SearchResult result = mcts.search(initialState, player, timeBudget, options.getInt("playouts", 0));
+            mcts.shutdown();
+
+            System.out.println("Best move: " + result.getMoveString());
+            if(options.has("stats")) {
+                System.out.println(mcts.toJson());
+            }
+            return;
+        }
+
+        //search the best move depth-first with increasing depth until the time budget is used up
+        TranspositionTable table = new TranspositionTable(options.getInt("hash", TranspositionTable.DEFAULT_SIZE_MB));
+        if(options.has("snapshot")) {
+            TableSnapshot snapshot = new TableSnapshot(table, options.get("snapshot", null));
+            snapshot.startLoading();
+            snapshot.saveOnShutdown();
+        }
+        ParallelSearch search = new ParallelSearch(options.getInt("threads", 1), table);
+        SearchResult result = search.iterativeDeepening(initialState, player, timeBudget);
+        search.shutdown();
+
+        String bestMove = result.getMoveString();
         //return the best found move to the player
         System.out.println("Best move: " + bestMove);
+
+        if(options.has("stats")) {
+            System.out.println(search.getStats().toJson());
+        }
+    }
+
+    /**
+     * parses the player argument
+     * @param arg : either '1' or '2'
+     * @return : PLAYER_1 or PLAYER_2
+     */
+    public static PIECE parsePlayer(String arg) {
+        switch(arg.toCharArray()[0]) {
+            case '1' : return PIECE.PLAYER_1;
+            case '2' : return PIECE.PLAYER_2;
+            default  : throw new IllegalArgumentException("Second Argument must be '1' or '2'");
+        }
     }
 
     /**
@@ -101,25 +192,41 @@ public class Main {
                 nextPlayer = PIECE.PLAYER_1;
             }
 
+            //canonical hashes of the children, used to skip symmetric moves at the root
+            long[] seen = new long[16];
+            int seenCount = 0;
+
             //iterate over all theoretically possible moves
             for(int i = 0; i < 16; i++) {
-                //clone the current state of the game
+                //full pillar, don't add child
+                if(!root.getGameCube().canPlay(i)) {
+                    continue;
+                }
+
+                //clone the current state of the game and add the new piece
                 GameCube temp = root.getGameCube().clone();
-                try {
-                    //try to add a new piece
-                    temp.placePiece(current_player,i % 4, i / 4);
+                temp.makeMove(i, current_player);
+
+                //a mirrored or rotated version of an earlier child has the same score, don't add child
+                if(depth == 0) {
+                    long hash = temp.getCanonicalHash();
+                    boolean duplicate = false;
+                    for(int k = 0; k < seenCount; k++) {
+                        duplicate |= seen[k] == hash;
+                    }
+                    if(duplicate) {
+                        continue;
+                    }
+                    seen[seenCount++] = hash;
+                }
 
-                    newNode = new TreeNode(temp);
-                    newNode.setMove("<" + i % 4 + "," + i / 4 + ">");
+                newNode = new TreeNode(temp);
+                newNode.setMove("<" + i % 4 + "," + i / 4 + ">");
 
-                    //recursively build the sub trees for new node
-                    newNode = buildTree(newNode, nextPlayer, depth + 1, maxDepth);
+                //recursively build the sub trees for new node
+                newNode = buildTree(newNode, nextPlayer, depth + 1, maxDepth);
 
-                    root.addChild(newNode);
-                }
-                catch (IllegalMoveException e) {
-                    //do nothing, don't add child
-                }
+                root.addChild(newNode);
             }
         }
 
@@ -138,7 +245,7 @@ public class Main {
 
         //end condition for recursion
         if(root.isLeaf()) {
-            bestScore = rateGameCube(root.getGameCube(), player);
+            bestScore = TableEvaluation.rate(root.getGameCube(), player);
         }
         else {
             int score;
@@ -0,0 +1,532 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Monte Carlo tree search (UCT), an engine that does not depend on Main.rateGameCube.
+ * Every iteration walks down the tree choosing the child with the best upper confidence bound, adds one node and plays
+ * the game to its end from there. The result is added to the statistics of all nodes on the way.
+ *
+ * The tree is stored in primitive arrays indexed by node, the children of a node lie next to each other. All threads
+ * work on the same tree: a thread adds a visit to every node it walks through before the result is known (virtual loss),
+ * so threads that follow spread over other children. Playouts run on plain bitboards, not on a GameCube, and are lightly
+ * guided: a player completes a line if possible and blocks the opponent's line otherwise, all other moves are random.
+ */
+public class MctsSearch {
+    public static final int DEFAULT_SIZE_MB = 64;
+
+    private static final int NODE_BYTES = 15;       //8 byte statistics + 4 byte first child + 3 byte move, child count, state
+    private static final double EXPLORATION = 1.0;  //weight of the exploration term of the upper confidence bound
+    private static final long VISIT = 1L << 32;
+
+    //child links
+    private static final int UNEXPANDED = 0;        //the root is node 0, so no node has it as child
+    private static final int EXPANDING  = -1;
+
+    //states of a node, from the view of the player who moved into it
+    private static final byte OPEN = 0;
+    private static final byte WON  = 1;
+    private static final byte DRAW = 2;
+
+    /**
+     * Bitmasks of all lines through each cell
+     */
+    private static final long[][] CELL_LINES = createCellLines();
+
+    private final AtomicLongArray stats;        //visits << 32 | points of the player who moved into the node, 2 per win, 1 per draw
+    private final AtomicIntegerArray children;  //index of the first child, UNEXPANDED or EXPANDING
+    private final byte[] moves;                 //pillar index of the move leading to the node
+    private final byte[] childCounts;
+    private final byte[] states;
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final ExecutorService pool;
+    private final int helpers;
+    private final AtomicLong playouts = new AtomicLong();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private volatile boolean stopped;
+
+    //the position of the current search
+    private long rootPlayer1;
+    private long rootPlayer2;
+    private long rootHeights;
+    private int rootSide;   //0 if PLAYER_1 is at turn
+    private long deadline;
+    private long maxPlayouts;
+
+    /**
+     * Creates a new search
+     * @param sizeMb : The memory of the tree in MB
+     * @param threads : The total number of threads, including the calling one
+     */
+    public MctsSearch(int sizeMb, int threads) {
+        int capacity = (int) Math.max(1024L, Math.min((long) sizeMb * 1024 * 1024 / NODE_BYTES, Integer.MAX_VALUE - 64));
+
+        stats = new AtomicLongArray(capacity);
+        children = new AtomicIntegerArray(capacity);
+        moves = new byte[capacity];
+        childCounts = new byte[capacity];
+        states = new byte[capacity];
+
+        helpers = threads - 1;
+        if(helpers <= 0) {
+            pool = null;
+        }
+        else {
+            pool = Executors.newFixedThreadPool(helpers, runnable -> {
+                Thread thread = new Thread(runnable, "mcts-helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Searches until the time budget or the playout limit is used up, or a winning move is found
+     * @param cube : The position to search
+     * @param player : The player at turn
+     * @param timeBudget : The time budget in milliseconds
+     * @param maxPlayouts : The playout limit, 0 for none
+     * @return : The most visited move, its score as 1000 * (2 * expected result - 1), PLUS_INFINITY for a winning move,
+     *           the deepest ply of the tree as depth and the number of playouts as nodes
+     */
+    public SearchResult search(GameCube cube, PIECE player, long timeBudget, long maxPlayouts) {
+        rootPlayer1 = cube.getBitboard(PIECE.PLAYER_1);
+        rootPlayer2 = cube.getBitboard(PIECE.PLAYER_2);
+        rootHeights = 0L;
+        for(int pillar = 0; pillar < 16; pillar++) {
+            rootHeights |= (long) cube.getHeight(pillar & 3, pillar >> 2) << (pillar << 2);
+        }
+        rootSide = player == PIECE.PLAYER_1 ? 0 : 1;
+        deadline = System.nanoTime() + timeBudget * 1000000L;
+        this.maxPlayouts = maxPlayouts > 0 ? maxPlayouts : Long.MAX_VALUE;
+
+        stopped = false;
+        playouts.set(0);
+        maxDepth.set(0);
+        size.set(1);
+        initNode(0, -1);
+
+        if(cube.getLegalMoves() == 0) {
+            return new SearchResult(-1, 0, 0, 0);
+        }
+
+        List<Future<?>> running = new ArrayList<Future<?>>();
+        for(int i = 0; i < helpers; i++) {
+            running.add(pool.submit(this::run));
+        }
+        run();
+
+        stopped = true;
+        for(Future<?> future : running) {
+            try {
+                future.get();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch(ExecutionException e) {
+                throw new RuntimeException("MCTS helper failed", e.getCause());
+            }
+        }
+
+        return bestResult();
+    }
+
+    /**
+     * Stops the running search, search() returns promptly
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Releases the helper threads
+     */
+    public void shutdown() {
+        if(pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets the number of playouts of the last search
+     * @return : the number of finished iterations
+     */
+    public long getPlayouts() {
+        return playouts.get();
+    }
+
+    /**
+     * Gets the number of nodes of the tree of the last search
+     * @return : the number of nodes, at most getCapacity()
+     */
+    public int getTreeSize() {
+        return Math.min(size.get(), stats.length());
+    }
+
+    /**
+     * Gets the maximum number of nodes of the tree
+     * @return : the number of nodes the arrays have room for
+     */
+    public int getCapacity() {
+        return stats.length();
+    }
+
+    /**
+     * Gets the statistics of the last search
+     * @return : playouts, tree size and deepest ply as a JSON object
+     */
+    public String toJson() {
+        return "{\"playouts\":" + getPlayouts() + ",\"treeNodes\":" + getTreeSize() + ",\"maxPly\":" + maxDepth.get() + "}";
+    }
+
+    /**
+     * Runs iterations on the calling thread until the search is stopped
+     */
+    private void run() {
+        int[] path = new int[65];
+        long[] bits = new long[2];
+        long[] threats = new long[2];
+        long[] random = {xorShift(System.nanoTime() ^ Thread.currentThread().getId() * 0x9E3779B97F4A7C15L)};
+
+        while(!stopped) {
+            iterate(path, bits, threats, random);
+
+            long done = playouts.incrementAndGet();
+            if(done >= maxPlayouts || ((done & 63) == 0 && (System.nanoTime() > deadline || states[bestChild()] == WON))) {
+                stopped = true;
+            }
+        }
+    }
+
+    /**
+     * Runs one iteration: selection, expansion, playout and backpropagation
+     * @param path : Receives the nodes walked through, at least 65 entries
+     * @param bits : Scratch space of the thread for the bitboards of both players, overwritten by the call
+     * @param threats : Scratch space of the thread for the threats of the playout, overwritten by the call
+     * @param random : The state of the random number generator of the thread
+     */
+    private void iterate(int[] path, long[] bits, long[] threats, long[] random) {
+        bits[0] = rootPlayer1;
+        bits[1] = rootPlayer2;
+        long heights = rootHeights;
+        int side = rootSide;
+        int node = 0;
+        int depth = 0;
+        int winner;
+
+        path[0] = 0;
+        stats.getAndAdd(0, VISIT);
+
+        while(true) {
+            byte state = states[node];
+            if(state != OPEN) {
+                winner = state == WON ? side ^ 1 : -1;
+                break;
+            }
+
+            int first = children.get(node);
+            if(first == UNEXPANDED && (depth == 0 || (stats.get(node) >>> 32) > 1)) {
+                first = expand(node, heights);
+            }
+            if(first <= 0) {
+                //not expanded yet or expanded by another thread right now
+                winner = playout(bits, threats, heights, side, random);
+                break;
+            }
+
+            int child = select(node, first);
+            int pillar = moves[child];
+            int cell = pillar + 16 * ((int) (heights >>> (pillar << 2)) & 0xF);
+            bits[side] |= 1L << cell;
+            heights += 1L << (pillar << 2);
+
+            //the state of a node never changes, so threads racing here store the same value
+            if(states[child] == OPEN) {
+                if(completesLine(bits[side], cell)) {
+                    states[child] = WON;
+                }
+                else if(heights == 0x4444444444444444L) {
+                    states[child] = DRAW;
+                }
+            }
+
+            stats.getAndAdd(child, VISIT);
+            path[++depth] = child;
+            node = child;
+            side ^= 1;
+        }
+
+        if(depth > maxDepth.get()) {
+            maxDepth.accumulateAndGet(depth, Math::max);
+        }
+
+        //the node at depth d was moved into by the player not at turn at depth d
+        for(int d = 0; d <= depth; d++) {
+            int mover = rootSide ^ ((d + 1) & 1);
+            long points = winner == mover ? 2 : winner < 0 ? 1 : 0;
+            if(points != 0) {
+                stats.getAndAdd(path[d], points);
+            }
+        }
+    }
+
+    /**
+     * Adds the children of a node, one per legal move
+     * @param node : The node to expand
+     * @param heights : The pillar heights in the node
+     * @return : The index of the first child, UNEXPANDED if the tree is full or EXPANDING if another thread is expanding
+     */
+    private int expand(int node, long heights) {
+        if(size.get() + 16 > stats.length()) {
+            return UNEXPANDED;
+        }
+        if(!children.compareAndSet(node, UNEXPANDED, EXPANDING)) {
+            return children.get(node);
+        }
+
+        int legal = legalMoves(heights);
+        int count = Integer.bitCount(legal);
+        int first = size.getAndAdd(count);
+
+        if(first + count > stats.length()) {
+            children.set(node, UNEXPANDED);
+            return UNEXPANDED;
+        }
+
+        for(int i = 0; legal != 0; legal &= legal - 1, i++) {
+            initNode(first + i, Integer.numberOfTrailingZeros(legal));
+        }
+        childCounts[node] = (byte) count;
+
+        //the volatile write publishes the initialized children to the other threads
+        children.set(node, first);
+        return first;
+    }
+
+    /**
+     * Chooses the child with the highest upper confidence bound, unvisited children and winning moves first
+     * @param node : The expanded node
+     * @param first : The index of its first child
+     * @return : the index of the chosen child
+     */
+    private int select(int node, int first) {
+        double logVisits = Math.log(Math.max(1L, stats.get(node) >>> 32));
+        int best = first;
+        double bestValue = Double.NEGATIVE_INFINITY;
+
+        for(int child = first; child < first + childCounts[node]; child++) {
+            long entry = stats.get(child);
+            long visits = entry >>> 32;
+
+            if(visits == 0 || states[child] == WON) {
+                return child;
+            }
+
+            double value = (entry & 0xFFFFFFFFL) / (2.0 * visits) + EXPLORATION * Math.sqrt(logVisits / visits);
+            if(value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Plays a game to its end. A player completes a line whenever possible, blocks the opponent's line otherwise and
+     * avoids moves that let the opponent complete a line on top of them, all other moves are random.
+     * The cells that would complete a line of each player (threats) are updated with every move, only for the lines
+     * through the new piece.
+     * @param bits : The bitboards of both players, changed by the call
+     * @param threats : Receives the threat cells of both players, the values passed in are not used
+     * @param heights : The pillar heights
+     * @param side : The player at turn, 0 for PLAYER_1
+     * @param random : The state of the random number generator of the thread, advanced by the call
+     * @return : the winning side, -1 for a draw
+     */
+    private static int playout(long[] bits, long[] threats, long heights, int side, long[] random) {
+        long occupied = bits[0] | bits[1];
+        long drops = 0L;    //the cell each pillar's next piece lands on
+        for(int pillar = 0; pillar < 16; pillar++) {
+            int height = (int) (heights >>> (pillar << 2)) & 0xF;
+            if(height < 4) {
+                drops |= 1L << (pillar + 16 * height);
+            }
+        }
+
+        threats[0] = 0L;
+        threats[1] = 0L;
+        for(long line : GameCube.LINES) {
+            for(int player = 0; player < 2; player++) {
+                long rest = line & ~bits[player];
+                if(Long.bitCount(rest) == 1 && (rest & occupied) == 0) {
+                    threats[player] |= rest;
+                }
+            }
+        }
+
+        while(drops != 0) {
+            long own = threats[side] & drops;
+            if(own != 0) {
+                return side;
+            }
+
+            long cell;
+            long blocks = threats[side ^ 1] & drops;
+            if(blocks != 0) {
+                cell = Long.lowestOneBit(blocks);
+            }
+            else {
+                //a piece below an opponent's threat lets the opponent complete that line
+                long safe = drops & ~(threats[side ^ 1] >>> 16);
+                long candidates = safe != 0 ? safe : drops;
+
+                random[0] = xorShift(random[0]);
+                int choice = (int) ((random[0] >>> 32) * Long.bitCount(candidates) >>> 32);
+                for(int i = 0; i < choice; i++) {
+                    candidates &= candidates - 1;
+                }
+                cell = Long.lowestOneBit(candidates);
+            }
+
+            int index = Long.numberOfTrailingZeros(cell);
+            bits[side] |= cell;
+            occupied |= cell;
+            drops ^= cell | (index < 48 ? cell << 16 : 0L);
+            threats[side ^ 1] &= ~cell;
+
+            for(long line : CELL_LINES[index]) {
+                long rest = line & ~bits[side];
+                if(Long.bitCount(rest) == 1 && (rest & occupied) == 0) {
+                    threats[side] |= rest;
+                }
+            }
+            side ^= 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Chooses the most visited child of the root
+     * @return : the node index, 0 if the root has no children yet
+     */
+    private int bestChild() {
+        int first = children.get(0);
+        if(first <= 0) {
+            return 0;
+        }
+
+        int best = first;
+        for(int child = first; child < first + childCounts[0]; child++) {
+            if(states[child] == WON) {
+                return child;
+            }
+            if((stats.get(child) >>> 32) > (stats.get(best) >>> 32)) {
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Builds the result of the finished search
+     * @return : the most visited move with its score
+     */
+    private SearchResult bestResult() {
+        int best = bestChild();
+        if(best == 0) {
+            //no iteration has finished, any legal move is better than none
+            return new SearchResult(Integer.numberOfTrailingZeros(legalMoves(rootHeights)), 0, 0, playouts.get());
+        }
+
+        long entry = stats.get(best);
+        long visits = Math.max(1L, entry >>> 32);
+        int score = states[best] == WON ? Main.PLUS_INFINITY
+                : (int) Math.round(1000.0 * ((entry & 0xFFFFFFFFL) / (double) visits - 1.0));
+        return new SearchResult(moves[best], score, maxDepth.get(), playouts.get());
+    }
+
+    /**
+     * Resets a node
+     * @param node : The node index
+     * @param pillar : The pillar index of the move leading to it
+     */
+    private void initNode(int node, int pillar) {
+        stats.set(node, 0L);
+        moves[node] = (byte) pillar;
+        childCounts[node] = 0;
+        states[node] = OPEN;
+        children.set(node, UNEXPANDED);
+    }
+
+    /**
+     * Calculates the pillars that are not full
+     * @param heights : The pillar heights, 4 bits per pillar
+     * @return : a bitmask with bit i set if pillar i can be played
+     */
+    private static int legalMoves(long heights) {
+        int legal = 0;
+        for(int pillar = 0; pillar < 16; pillar++) {
+            if(((heights >>> (pillar << 2)) & 0xF) < 4) {
+                legal |= 1 << pillar;
+            }
+        }
+        return legal;
+    }
+
+    /**
+     * Checks if a piece completes a line
+     * @param own : The cells of the player, including the new piece
+     * @param cell : The cell of the new piece
+     * @return : true if one of the lines through the cell is full
+     */
+    private static boolean completesLine(long own, int cell) {
+        for(long line : CELL_LINES[cell]) {
+            if((own & line) == line) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Advances a xorshift random number generator
+     * @param x : The current state, not 0
+     * @return : the next state
+     */
+    private static long xorShift(long x) {
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        return x == 0 ? 0x9E3779B97F4A7C15L : x;
+    }
+
+    /**
+     * Creates the bitmasks of the lines through every cell
+     * @return : the masks of GameCube.LINES_THROUGH_CELL
+     */
+    private static long[][] createCellLines() {
+        long[][] cellLines = new long[64][];
+
+        for(int cell = 0; cell < 64; cell++) {
+            int[] lines = GameCube.LINES_THROUGH_CELL[cell];
+            cellLines[cell] = new long[lines.length];
+            for(int i = 0; i < lines.length; i++) {
+                cellLines[cell][i] = GameCube.LINES[lines[i]];
+            }
+        }
+        return cellLines;
+    }
+}
@@ -0,0 +1,86 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read access to an opening book file written by BookGenerator.
+ * The file is memory-mapped and searched in place, so the book is never loaded onto the heap.
+ *
+ * File layout (big endian):
+ *   header : int MAGIC, int VERSION, int number of entries, int plies the book was generated for
+ *   entry  : long position key, int score, byte best move, byte depth, 2 bytes padding
+ * Entries are sorted by key. Keys are Search.positionKey of the canonical form, moves are stored for it as well.
+ */
+public class OpeningBook {
+    public static final int MAGIC = 0x4B425342;    //"KBSB"
+    public static final int VERSION = 2;     //2: canonical form chosen by the smallest bitboards
+    public static final int HEADER_BYTES = 16;
+    public static final int ENTRY_BYTES = 16;
+
+    private final MappedByteBuffer buffer;
+    private final int entries;
+
+    /**
+     * Opens and maps a book file
+     * @param path : The path of the book file
+     * @throws IOException : If the file cannot be read or is not a book of this version
+     */
+    public OpeningBook(String path) throws IOException {
+        try(RandomAccessFile file = new RandomAccessFile(path, "r"); FileChannel channel = file.getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if(buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not an opening book of version " + VERSION + ": " + path);
+        }
+
+        entries = buffer.getInt(8);
+        if(buffer.limit() < HEADER_BYTES + (long) entries * ENTRY_BYTES) {
+            throw new IOException("Opening book is truncated: " + path);
+        }
+    }
+
+    /**
+     * Looks up the best move of a position
+     * @param cube : The position
+     * @param player : The player at turn
+     * @return : The stored move, score and depth, null if the position is not in the book
+     */
+    public SearchResult probe(GameCube cube, PIECE player) {
+        long key = Search.positionKey(cube, player);
+        int low = 0;
+        int high = entries - 1;
+
+        //binary search over the sorted keys
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            int offset = HEADER_BYTES + middle * ENTRY_BYTES;
+            long middleKey = buffer.getLong(offset);
+
+            if(middleKey < key) {
+                low = middle + 1;
+            }
+            else if(middleKey > key) {
+                high = middle - 1;
+            }
+            else {
+                int move = GameCube.transformPillar(cube.getCanonicalSymmetry(), buffer.get(offset + 12), true);
+                return new SearchResult(move, buffer.getInt(offset + 8), buffer.get(offset + 13), 0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the number of positions in the book
+     * @return : the number of entries
+     */
+    public int size() {
+        return entries;
+    }
+}
@@ -0,0 +1,112 @@
+package de.dualshower;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits command line arguments into positional arguments and options of the form --name=value or --name
+ */
+public class Options {
+    private final List<String> arguments = new ArrayList<String>();
+    private final Map<String, String> options = new HashMap<String, String>();
+
+    /**
+     * Parses the command line
+     * @param args : The arguments as passed to a main-function
+     */
+    public Options(String[] args) {
+        for(String arg : args) {
+            if(arg.startsWith("--")) {
+                int split = arg.indexOf('=');
+                if(split < 0) {
+                    options.put(arg.substring(2), "true");
+                }
+                else {
+                    options.put(arg.substring(2, split), arg.substring(split + 1));
+                }
+            }
+            else {
+                arguments.add(arg);
+            }
+        }
+    }
+
+    /**
+     * Gets a positional argument
+     * @param index : The index among the positional arguments
+     * @return : The argument, null if there are not enough arguments
+     */
+    public String getArgument(int index) {
+        return index < arguments.size() ? arguments.get(index) : null;
+    }
+
+    /**
+     * Gets the number of positional arguments
+     * @return : the number of arguments that are not options
+     */
+    public int getArgumentCount() {
+        return arguments.size();
+    }
+
+    /**
+     * Checks if an option was given
+     * @param name : The name of the option without leading dashes
+     * @return : true if the option is present
+     */
+    public boolean has(String name) {
+        return options.containsKey(name);
+    }
+
+    /**
+     * Gets the value of an option
+     * @param name : The name of the option without leading dashes
+     * @param defaultValue : The value to return if the option is missing
+     * @return : The value of the option
+     */
+    public String get(String name, String defaultValue) {
+        String value = options.get(name);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Gets the value of a numeric option
+     * @param name : The name of the option without leading dashes
+     * @param defaultValue : The value to return if the option is missing
+     * @return : The value of the option
+     */
+    public int getInt(String name, int defaultValue) {
+        String value = options.get(name);
+        if(value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        }
+        catch(NumberFormatException e) {
+            throw new IllegalArgumentException("Option --" + name + " must be a number");
+        }
+    }
+
+    /**
+     * Gets the value of a decimal option
+     * @param name : The name of the option without leading dashes
+     * @param defaultValue : The value to return if the option is missing
+     * @return : The value of the option
+     */
+    public double getDouble(String name, double defaultValue) {
+        String value = options.get(name);
+        if(value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Double.parseDouble(value);
+        }
+        catch(NumberFormatException e) {
+            throw new IllegalArgumentException("Option --" + name + " must be a number");
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+
+/**
+ * Fixed-width binary form of a position: the bitboards of both players and the player at turn.
+ * Instances are mutable, so a reader can fill the same one for every record without allocating.
+ * Conversions go straight between the bitboards, the 64 character format of Main and GameCube.
+ */
+public class PackedPosition {
+    private long player1;   //occupied cells of PLAYER_1, cell index = column + 4 * row + 16 * height
+    private long player2;   //occupied cells of PLAYER_2
+    private PIECE toMove = PIECE.PLAYER_1;
+
+    /**
+     * Creates an empty position with PLAYER_1 at turn
+     */
+    public PackedPosition() {
+    }
+
+    /**
+     * Creates a position from bitboards
+     * @param player1 : The cells occupied by PLAYER_1
+     * @param player2 : The cells occupied by PLAYER_2
+     * @param toMove : The player at turn
+     */
+    public PackedPosition(long player1, long player2, PIECE toMove) {
+        set(player1, player2, toMove);
+    }
+
+    /**
+     * Replaces the position
+     * @param player1 : The cells occupied by PLAYER_1
+     * @param player2 : The cells occupied by PLAYER_2
+     * @param toMove : The player at turn
+     * @return : this position
+     */
+    public PackedPosition set(long player1, long player2, PIECE toMove) {
+        this.player1 = player1;
+        this.player2 = player2;
+        this.toMove = toMove;
+        return this;
+    }
+
+    /**
+     * Replaces the position by the one of a GameCube
+     * @param cube : The cube to take the pieces from
+     * @param toMove : The player at turn
+     * @return : this position
+     */
+    public PackedPosition set(GameCube cube, PIECE toMove) {
+        return set(cube.getBitboard(PIECE.PLAYER_1), cube.getBitboard(PIECE.PLAYER_2), toMove);
+    }
+
+    /**
+     * Replaces the position by one in the format of Main, with the same falling rules as Main.inititializeCube
+     * @param position : String of up to 64 characters either 0, 1 or 2, character i drops into pillar i % 16
+     * @param toMove : The player at turn
+     * @return : this position
+     * @throws IllegalArgumentException : If the String holds another character or a pillar overflows
+     */
+    public PackedPosition set(String position, PIECE toMove) {
+        long bits1 = 0L;
+        long bits2 = 0L;
+        long heights = 0L;  //4 bits per pillar, as in GameCube
+
+        for(int index = 0; index < position.length(); index++) {
+            char c = position.charAt(index);
+            if(c == '0') {
+                continue;
+            }
+            if(c != '1' && c != '2') {
+                throw new IllegalArgumentException("Only '0', '1' and '2' are allowed in the input string.");
+            }
+
+            int pillar = index & 15;
+            int height = (int) (heights >>> (pillar << 2)) & 0xF;
+            if(height == 4) {
+                throw new IllegalArgumentException("Piece could not be placed in pillar: <" + (pillar & 3) + ","
+                        + (pillar >> 2) + ">");
+            }
+
+            long cell = 1L << (pillar + 16 * height);
+            if(c == '1') {
+                bits1 |= cell;
+            }
+            else {
+                bits2 |= cell;
+            }
+            heights += 1L << (pillar << 2);
+        }
+        return set(bits1, bits2, toMove);
+    }
+
+    /**
+     * Gets the cells occupied by PLAYER_1
+     * @return : the bitboard, cell index = column + 4 * row + 16 * height
+     */
+    public long getPlayer1() {
+        return player1;
+    }
+
+    /**
+     * Gets the cells occupied by PLAYER_2
+     * @return : the bitboard, cell index = column + 4 * row + 16 * height
+     */
+    public long getPlayer2() {
+        return player2;
+    }
+
+    /**
+     * Gets the player at turn
+     * @return : PLAYER_1 or PLAYER_2
+     */
+    public PIECE getToMove() {
+        return toMove;
+    }
+
+    /**
+     * Creates a GameCube holding this position
+     * @return : the new cube
+     * @throws IllegalArgumentException : If the bitboards are no valid position
+     */
+    public GameCube toCube() {
+        return GameCube.fromBitboards(player1, player2);
+    }
+
+    /**
+     * Replaces the pieces of an existing GameCube by this position, without allocating
+     * @param cube : The cube to fill
+     * @throws IllegalArgumentException : If the bitboards are no valid position
+     */
+    public void toCube(GameCube cube) {
+        cube.setBitboards(player1, player2);
+    }
+
+    /**
+     * Formats the pieces in the format of Main
+     * @return : String of 64 characters, character i is cell i
+     */
+    public String getPositionString() {
+        char[] chars = new char[64];
+
+        for(int cell = 0; cell < 64; cell++) {
+            long bit = 1L << cell;
+            chars[cell] = (player1 & bit) != 0 ? '1' : (player2 & bit) != 0 ? '2' : '0';
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Formats the position like a line of BatchAnalyzer input
+     * @return : "<position> <player>"
+     */
+    @Override
+    public String toString() {
+        return getPositionString() + " " + (toMove == PIECE.PLAYER_1 ? '1' : '2');
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(!(other instanceof PackedPosition)) {
+            return false;
+        }
+        PackedPosition position = (PackedPosition) other;
+        return player1 == position.player1 && player2 == position.player2 && toMove == position.toMove;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(player1 * 31 + player2) * 31 + toMove.ordinal();
+    }
+}
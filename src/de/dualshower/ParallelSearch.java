@@ -0,0 +1,194 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Lazy SMP: the calling thread runs the main Search, while helper threads search the same position at the same time.
+ * All threads share one TranspositionTable, so the main search picks up results that the helpers have already found.
+ * Every second helper skips a depth, which spreads the threads over different iterations.
+ * Each search starts a new generation of the table, so results of earlier searches in the same game are kept only
+ * as long as they are still probed.
+ */
+public class ParallelSearch {
+    private final TranspositionTable table;
+    private final Search main;
+    private final List<Search> helpers = new ArrayList<Search>();
+    private final ExecutorService pool;
+
+    /**
+     * Creates a new parallel search
+     * @param threads : The total number of threads, including the calling one
+     * @param table : The TranspositionTable shared by all threads
+     */
+    public ParallelSearch(int threads, TranspositionTable table) {
+        this.table = table;
+        this.main = new Search(table);
+
+        for(int i = 1; i < threads; i++) {
+            helpers.add(new Search(table));
+        }
+
+        if(helpers.isEmpty()) {
+            pool = null;
+        }
+        else {
+            pool = Executors.newFixedThreadPool(helpers.size(), runnable -> {
+                Thread thread = new Thread(runnable, "search-helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Searches with increasing depth on all threads until the time budget is used up or the result is decided
+     * @param cube : The position to search
+     * @param player : The player at turn
+     * @param timeBudget : The time budget in milliseconds
+     * @return : The result of the main thread, nodes are summed up over all threads
+     */
+    public SearchResult iterativeDeepening(GameCube cube, PIECE player, long timeBudget) {
+        return iterativeDeepening(cube, player, timeBudget, 2);
+    }
+
+    /**
+     * Searches with increasing depth on all threads, continuing at a depth the table already holds results for
+     * @param cube : The position to search
+     * @param player : The player at turn
+     * @param timeBudget : The time budget in milliseconds
+     * @param firstDepth : The depth to continue with after depth 1
+     * @return : The result of the main thread, nodes are summed up over all threads
+     */
+    public SearchResult iterativeDeepening(GameCube cube, PIECE player, long timeBudget, int firstDepth) {
+        return run(cube, player, System.nanoTime() + timeBudget * 1000000L, firstDepth);
+    }
+
+    /**
+     * Searches with increasing depth on all threads without a time limit, until stop() is called or the result is decided
+     * @param cube : The position to search
+     * @param player : The player at turn
+     * @param firstDepth : The depth to continue with after depth 1
+     * @return : The result of the main thread, nodes are summed up over all threads
+     */
+    public SearchResult ponder(GameCube cube, PIECE player, int firstDepth) {
+        return run(cube, player, Long.MAX_VALUE, firstDepth);
+    }
+
+    /**
+     * Runs the main search on the calling thread and the helpers on the pool
+     * @param cube : The position to search
+     * @param player : The player at turn
+     * @param deadline : The System.nanoTime() at which the main search stops, Long.MAX_VALUE to run until stop()
+     * @param firstDepth : The depth to continue with after depth 1
+     * @return : The result of the main thread, nodes are summed up over all threads
+     */
+    private SearchResult run(GameCube cube, PIECE player, long deadline, int firstDepth) {
+        List<Future<?>> running = new ArrayList<Future<?>>();
+        table.newGeneration();
+
+        for(int i = 0; i < helpers.size(); i++) {
+            final Search helper = helpers.get(i);
+            final int depthOffset = i % 2 == 0 ? 1 : 0;
+
+            //every Search plays its moves on its own copy of the cube
+            running.add(pool.submit(() -> helper.iterativeDeepening(cube, player, Long.MAX_VALUE, depthOffset, firstDepth)));
+        }
+
+        SearchResult result = main.iterativeDeepening(cube, player, deadline, 0, firstDepth);
+        long nodes = result.getNodes();
+
+        for(int i = 0; i < helpers.size(); i++) {
+            awaitStop(helpers.get(i), running.get(i));
+            nodes += helpers.get(i).getNodes();
+        }
+
+        return new SearchResult(result.getMove(), result.getScore(), result.getDepth(), nodes);
+    }
+
+    /**
+     * Stops the search on all threads, the running call of iterativeDeepening returns promptly
+     */
+    public void stop() {
+        main.stop();
+        for(Search helper : helpers) {
+            helper.stop();
+        }
+    }
+
+    /**
+     * Gets the statistics of the last search, the counters of all threads are added up into new statistics
+     * @return : the statistics with the iterations of the main thread, null if nothing was searched yet
+     */
+    public SearchStats getStats() {
+        if(main.getStats() == null) {
+            return null;
+        }
+
+        SearchStats stats = new SearchStats(main.getStats());
+        for(Search helper : helpers) {
+            if(helper.getStats() != null) {
+                stats.add(helper.getStats());
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Gets the TranspositionTable shared by all threads
+     * @return : the table
+     */
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Gets the number of threads
+     * @return : the number of helpers plus the calling thread
+     */
+    public int getThreads() {
+        return helpers.size() + 1;
+    }
+
+    /**
+     * Releases the helper threads
+     */
+    public void shutdown() {
+        if(pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Stops a helper and waits for it to finish.
+     * The stop is repeated until the helper is done, since a helper that had not started yet resets its stop flag.
+     * @param helper : The helper to stop
+     * @param future : The task running the helper
+     */
+    private static void awaitStop(Search helper, Future<?> future) {
+        while(!future.isDone()) {
+            helper.stop();
+            try {
+                future.get(1, TimeUnit.MILLISECONDS);
+            }
+            catch(TimeoutException e) {
+                //not done yet, stop again
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch(ExecutionException e) {
+                throw new RuntimeException("Search helper failed", e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Counts the leaves of the game tree to a fixed depth, the same tree that Main.buildTree builds.
+ * Used to check that changes to GameCube or the move generation leave the tree unchanged, and to measure their speed.
+ *
+ * Leaf counts from the empty cube, PLAYER_1 at turn (the first line can only be completed in ply 7):
+ *   depth   all positions     stopping at won positions
+ *     1                16                16
+ *     2               256               256
+ *     3              4096              4096
+ *     4             65536             65536
+ *     5           1048560           1048560
+ *     6          16775760          16775760
+ *     7         268358160         268358160
+ *     8        4291840560        4281256800
+ */
+public class Perft {
+
+    /**
+     * Main-function of perft
+     * @param args : args[0]: the position in the format of Main
+     *               args[1]: the player at turn, '1' or '2'
+     *               args[2]: the depth
+     *               options: --stop-at-win  positions in which a player has completed a line are leaves
+     *                        --divide       print the count of every root move
+     *                        --threads=N    split the root moves across N threads, defaults to 1
+     *                        --tree         also build the tree with Main.buildTree and compare the counts, with
+     *                                       --stop-at-win they are counted again without it for the comparison
+     */
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        Options options = new Options(args);
+        GameCube cube = new GameCube();
+        Main.inititializeCube(cube, options.getArgument(0));
+        PIECE player = Main.parsePlayer(options.getArgument(1));
+        int depth = Integer.parseInt(options.getArgument(2));
+        boolean stopAtWin = options.has("stop-at-win");
+        int threads = options.getInt("threads", 1);
+
+        long start = System.nanoTime();
+        long[] divide = divide(cube, player, depth, stopAtWin, threads);
+        long time = System.nanoTime() - start;
+
+        long total = divide[16];
+        if(options.has("divide")) {
+            for(int pillar = 0; pillar < 16; pillar++) {
+                if(divide[pillar] >= 0) {
+                    System.out.println("<" + pillar % 4 + "," + pillar / 4 + ">: " + divide[pillar]);
+                }
+            }
+        }
+        System.out.println("depth " + depth + ": " + total + " leaves in " + time / 1000000 + " ms, "
+                + (long) (total * 1e9 / Math.max(1, time)) + " leaves/sec");
+
+        if(options.has("tree")) {
+            //the tree plays on below completed lines
+            compareWithTree(cube, player, depth, stopAtWin ? divide(cube, player, depth, false, threads) : divide);
+        }
+    }
+
+    /**
+     * Counts the leaves below every root move
+     * @param cube : The root position
+     * @param player : The player at turn
+     * @param depth : The depth
+     * @param stopAtWin : true if won positions are leaves
+     * @param threads : The number of threads to split the root moves across
+     * @return : The count per pillar, -1 for full pillars, followed by the total at index 16
+     */
+    public static long[] divide(GameCube cube, PIECE player, int depth, boolean stopAtWin, int threads)
+            throws InterruptedException, ExecutionException {
+        long[] counts = new long[17];
+        Arrays.fill(counts, -1);
+
+        if(depth == 0 || (stopAtWin && cube.isWon()) || cube.getLegalMoves() == 0) {
+            counts[16] = 1;
+            return counts;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> results = new ArrayList<Future<Long>>();
+
+        for(int pillar = 0; pillar < 16; pillar++) {
+            if(!cube.canPlay(pillar)) {
+                results.add(null);
+                continue;
+            }
+
+            GameCube child = cube.clone();
+            child.makeMove(pillar, player);
+            results.add(pool.submit(() -> perft(child, Search.opponent(player), depth - 1, stopAtWin)));
+        }
+
+        counts[16] = 0;
+        for(int pillar = 0; pillar < 16; pillar++) {
+            if(results.get(pillar) != null) {
+                counts[pillar] = results.get(pillar).get();
+                counts[16] += counts[pillar];
+            }
+        }
+        pool.shutdown();
+
+        return counts;
+    }
+
+    /**
+     * Counts the leaves of the tree below a position
+     * @param cube : The position, unchanged after the call
+     * @param toMove : The player at turn
+     * @param depth : The remaining depth
+     * @param stopAtWin : true if won positions are leaves
+     * @return : The number of leaves
+     */
+    public static long perft(GameCube cube, PIECE toMove, int depth, boolean stopAtWin) {
+        int moves = cube.getLegalMoves();
+
+        if(depth == 0 || moves == 0 || (stopAtWin && cube.isWon())) {
+            return 1;
+        }
+
+        //every child of the last level is a leaf
+        if(depth == 1) {
+            return Integer.bitCount(moves);
+        }
+
+        long count = 0;
+        PIECE next = Search.opponent(toMove);
+
+        while(moves != 0) {
+            int pillar = Integer.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
+
+            cube.makeMove(pillar, toMove);
+            count += perft(cube, next, depth - 1, stopAtWin);
+            cube.undoMove(pillar);
+        }
+        return count;
+    }
+
+    /**
+     * Builds the tree with Main.buildTree and compares its leaves with the perft counts of all root moves.
+     * buildTree keeps only the first root move of every canonical position, so the root moves are grouped by the
+     * canonical hash of their child: the tree must hold exactly the first move of every group with the perft count of
+     * that move, and every other move of a group must have the same perft count as the first one.
+     * @param cube : The root position
+     * @param player : The player at turn
+     * @param depth : The depth
+     * @param divide : The counts per root move as returned by divide, without stopping at won positions
+     */
+    private static void compareWithTree(GameCube cube, PIECE player, int depth, long[] divide) {
+        TreeNode root = new TreeNode(cube);
+        Main.buildTree(root, player, 0, depth);
+
+        //the first root move with the same canonical child, -1 for full pillars
+        int[] representative = new int[16];
+        Arrays.fill(representative, -1);
+        long[] hashes = new long[16];
+        for(int pillar = 0; pillar < 16; pillar++) {
+            if(!cube.canPlay(pillar)) {
+                continue;
+            }
+
+            GameCube child = cube.clone();
+            child.makeMove(pillar, player);
+            hashes[pillar] = child.getCanonicalHash();
+            representative[pillar] = pillar;
+            for(int earlier = 0; earlier < pillar; earlier++) {
+                if(representative[earlier] == earlier && hashes[earlier] == hashes[pillar]) {
+                    representative[pillar] = earlier;
+                    break;
+                }
+            }
+        }
+
+        boolean same = true;
+        boolean[] inTree = new boolean[16];
+        for(TreeNode child : root.getChildren()) {
+            String move = child.getMove();
+            int pillar = (move.charAt(1) - '0') + 4 * (move.charAt(3) - '0');
+            long leaves = countLeaves(child);
+            inTree[pillar] = true;
+
+            if(representative[pillar] != pillar) {
+                System.out.println("MISMATCH " + move + ": in the tree, but not the first move of its canonical position");
+                same = false;
+            }
+            if(leaves != divide[pillar]) {
+                System.out.println("MISMATCH " + move + ": tree " + leaves + ", perft " + divide[pillar]);
+                same = false;
+            }
+        }
+
+        int compared = 0;
+        for(int pillar = 0; pillar < 16; pillar++) {
+            if(representative[pillar] < 0) {
+                continue;
+            }
+            compared++;
+
+            String move = "<" + pillar % 4 + "," + pillar / 4 + ">";
+            if(representative[pillar] == pillar && !inTree[pillar]) {
+                System.out.println("MISMATCH " + move + ": missing in the tree");
+                same = false;
+            }
+            if(divide[pillar] != divide[representative[pillar]]) {
+                System.out.println("MISMATCH " + move + ": perft " + divide[pillar] + ", symmetric move perft "
+                        + divide[representative[pillar]]);
+                same = false;
+            }
+        }
+        System.out.println(same ? "tree matches for " + compared + " root moves (" + root.getChildren().size()
+                + " canonical)" : "tree DIFFERS");
+    }
+
+    /**
+     * Counts the leaves of a TreeNode
+     * @param node : The root of the (sub)tree
+     * @return : The number of leaves below node, 1 if node is a leaf itself
+     */
+    private static long countLeaves(TreeNode node) {
+        if(node.isLeaf()) {
+            return 1;
+        }
+
+        long count = 0;
+        for(TreeNode child : node.getChildren()) {
+            count += countLeaves(child);
+        }
+        return count;
+    }
+}
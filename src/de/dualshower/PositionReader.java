@@ -0,0 +1,112 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Random access to a position file written by PositionWriter.
+ * The file is memory-mapped in segments, so files beyond 2 GB work as well, and records are decoded in place into a
+ * PackedPosition or GameCube given by the caller. Reading a record allocates nothing.
+ *
+ * File layout (big endian):
+ *   header : int MAGIC, int VERSION, long number of records
+ *   record : long cells of PLAYER_1, long cells of PLAYER_2, byte player at turn (1 or 2)
+ */
+public class PositionReader {
+    public static final int MAGIC = 0x4B42504F;    //"KBPO"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+    public static final int RECORD_BYTES = 17;
+
+    private static final int SEGMENT_RECORDS = 1 << 26;  //records per mapping, about 1.1 GB
+
+    private final MappedByteBuffer[] segments;
+    private final long records;
+
+    /**
+     * Opens and maps a position file
+     * @param path : The path of the position file
+     * @throws IOException : If the file cannot be read or is not a position file of this version
+     */
+    public PositionReader(String path) throws IOException {
+        try(RandomAccessFile file = new RandomAccessFile(path, "r"); FileChannel channel = file.getChannel()) {
+            if(channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a position file of version " + VERSION + ": " + path);
+            }
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a position file of version " + VERSION + ": " + path);
+            }
+
+            records = header.getLong(8);
+            if(records < 0 || channel.size() < HEADER_BYTES + records * RECORD_BYTES) {
+                throw new IOException("Position file is truncated: " + path);
+            }
+
+            segments = new MappedByteBuffer[(int) ((records + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS)];
+            for(int i = 0; i < segments.length; i++) {
+                long first = (long) i * SEGMENT_RECORDS;
+                long count = Math.min(SEGMENT_RECORDS, records - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + first * RECORD_BYTES,
+                        count * RECORD_BYTES);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of positions in the file
+     * @return : the number of records
+     */
+    public long size() {
+        return records;
+    }
+
+    /**
+     * Decodes a record
+     * @param index : The index of the record, 0 <= index < size()
+     * @param position : The position to fill
+     * @return : position
+     * @throws IllegalStateException : If the record holds no valid player at turn
+     */
+    public PackedPosition read(long index, PackedPosition position) {
+        MappedByteBuffer segment = segments[(int) (index / SEGMENT_RECORDS)];
+        int offset = (int) (index % SEGMENT_RECORDS) * RECORD_BYTES;
+
+        return position.set(segment.getLong(offset), segment.getLong(offset + 8), player(segment.get(offset + 16), index));
+    }
+
+    /**
+     * Decodes a record straight into a GameCube
+     * @param index : The index of the record, 0 <= index < size()
+     * @param cube : The cube whose pieces are replaced
+     * @return : the player at turn
+     * @throws IllegalArgumentException : If the record holds no valid position
+     * @throws IllegalStateException : If the record holds no valid player at turn
+     */
+    public PIECE read(long index, GameCube cube) {
+        MappedByteBuffer segment = segments[(int) (index / SEGMENT_RECORDS)];
+        int offset = (int) (index % SEGMENT_RECORDS) * RECORD_BYTES;
+
+        cube.setBitboards(segment.getLong(offset), segment.getLong(offset + 8));
+        return player(segment.get(offset + 16), index);
+    }
+
+    /**
+     * Decodes the player byte of a record
+     * @param value : The stored byte
+     * @param index : The index of the record, for the error message
+     * @return : PLAYER_1 or PLAYER_2
+     */
+    private static PIECE player(byte value, long index) {
+        switch(value) {
+            case 1  : return PIECE.PLAYER_1;
+            case 2  : return PIECE.PLAYER_2;
+            default : throw new IllegalStateException("Corrupt player in record " + index + ": " + value);
+        }
+    }
+}
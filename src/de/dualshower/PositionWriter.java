@@ -0,0 +1,193 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+
+/**
+ * Writes position files in the format read by PositionReader.
+ * Records are streamed through a buffer, the number of records is filled into the header when the writer is closed.
+ */
+public class PositionWriter implements Closeable {
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final String path;
+    private final DataOutputStream out;
+    private long records;
+
+    /**
+     * Creates a position file, an existing file is overwritten
+     * @param path : The path of the position file
+     * @throws IOException : If the file cannot be created
+     */
+    public PositionWriter(String path) throws IOException {
+        this.path = path;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), BUFFER_BYTES));
+
+        out.writeInt(PositionReader.MAGIC);
+        out.writeInt(PositionReader.VERSION);
+        out.writeLong(0L);
+    }
+
+    /**
+     * Main-function of the conversion tool
+     * @param args : args[0]: "pack" to convert text to binary or "unpack" to convert binary to text
+     *               args[1]: input file, for pack "-" or omitted reads stdin
+     *               args[2]: output file, for unpack omitted writes stdout
+     *               Text lines are "<position> <player>" in the format of Main, as read by BatchAnalyzer.
+     */
+    public static void main(String[] args) throws IOException {
+        Options options = new Options(args);
+        String mode = options.getArgument(0);
+        String input = options.getArgument(1);
+        String output = options.getArgument(2);
+        long start = System.nanoTime();
+        long count;
+
+        if("pack".equals(mode) && output != null) {
+            count = pack(input, output);
+        }
+        else if("unpack".equals(mode) && input != null) {
+            count = unpack(input, output);
+        }
+        else {
+            System.err.println("Usage: PositionWriter pack <text file|-> <position file>");
+            System.err.println("       PositionWriter unpack <position file> [text file]");
+            return;
+        }
+        System.err.println(count + " positions converted in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Appends a position
+     * @param player1 : The cells occupied by PLAYER_1
+     * @param player2 : The cells occupied by PLAYER_2
+     * @param toMove : The player at turn
+     * @throws IOException : If writing fails
+     */
+    public void write(long player1, long player2, PIECE toMove) throws IOException {
+        out.writeLong(player1);
+        out.writeLong(player2);
+        out.writeByte(toMove == PIECE.PLAYER_1 ? 1 : 2);
+        records++;
+    }
+
+    /**
+     * Appends a position
+     * @param position : The position to write
+     * @throws IOException : If writing fails
+     */
+    public void write(PackedPosition position) throws IOException {
+        write(position.getPlayer1(), position.getPlayer2(), position.getToMove());
+    }
+
+    /**
+     * Appends a position
+     * @param cube : The cube to take the pieces from
+     * @param toMove : The player at turn
+     * @throws IOException : If writing fails
+     */
+    public void write(GameCube cube, PIECE toMove) throws IOException {
+        write(cube.getBitboard(PIECE.PLAYER_1), cube.getBitboard(PIECE.PLAYER_2), toMove);
+    }
+
+    /**
+     * Gets the number of positions written so far
+     * @return : the number of records
+     */
+    public long size() {
+        return records;
+    }
+
+    /**
+     * Flushes all records and writes their number into the header
+     * @throws IOException : If writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+
+        try(RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            file.seek(8);
+            file.writeLong(records);
+        }
+    }
+
+    /**
+     * Converts a text file into a position file
+     * @param input : The text file, null or "-" for stdin
+     * @param output : The position file
+     * @return : the number of positions
+     * @throws IOException : If reading or writing fails
+     * @throws IllegalArgumentException : If a line holds no valid position, naming its line number
+     */
+    private static long pack(String input, String output) throws IOException {
+        PackedPosition position = new PackedPosition();
+        long lineNumber = 0;
+
+        try(BufferedReader reader = input == null || input.equals("-")
+                    ? new BufferedReader(new InputStreamReader(System.in))
+                    : new BufferedReader(new FileReader(input));
+            PositionWriter writer = new PositionWriter(output)) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                lineNumber++;
+                String[] fields = line.trim().split("\\s+");
+                if(fields[0].isEmpty()) {
+                    continue;
+                }
+
+                try {
+                    if(fields.length < 2) {
+                        throw new IllegalArgumentException("Expected '<position> <player>'");
+                    }
+                    writer.write(position.set(fields[0], Main.parsePlayer(fields[1])));
+                }
+                catch(IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+            return writer.size();
+        }
+    }
+
+    /**
+     * Converts a position file into a text file
+     * @param input : The position file
+     * @param output : The text file, null for stdout
+     * @return : the number of positions
+     * @throws IOException : If reading or writing fails
+     */
+    private static long unpack(String input, String output) throws IOException {
+        PositionReader reader = new PositionReader(input);
+        PackedPosition position = new PackedPosition();
+        Writer writer = new BufferedWriter(output == null
+                ? new OutputStreamWriter(System.out)
+                : new OutputStreamWriter(new FileOutputStream(output)));
+
+        try {
+            for(long i = 0; i < reader.size(); i++) {
+                writer.write(reader.read(i, position).toString());
+                writer.write('\n');
+            }
+        }
+        finally {
+            writer.flush();
+            if(output != null) {
+                writer.close();
+            }
+        }
+        return reader.size();
+    }
+}
@@ -0,0 +1,83 @@
+package de.dualshower;
+
+public class ProofResult {
+    /**
+     * PROVEN    : the player at turn wins against every defence
+     * DISPROVEN : the opponent can prevent the win, by a draw or a win of their own
+     * UNKNOWN   : the node limit was reached first
+     */
+    public enum Status {PROVEN, DISPROVEN, UNKNOWN}
+
+    private final Status status;
+    private final int[] line;
+    private final long nodes;
+
+    /**
+     * Creates a new result of a ProofSearch
+     * @param status : The outcome of the search
+     * @param line : The pillar indices of the winning line if proven, empty otherwise
+     * @param nodes : The number of nodes that were visited
+     */
+    public ProofResult(Status status, int[] line, long nodes) {
+        this.status = status;
+        this.line = line;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Gets the outcome of the search
+     * @return : PROVEN, DISPROVEN or UNKNOWN
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Gets the winning line, alternating moves of the winner and the defender, ending with the winning move.
+     * The line may be cut short if the node limit was reached while it was read out.
+     * @return : the pillar indices of the moves, empty if the win was not proven
+     */
+    public int[] getLine() {
+        return line.clone();
+    }
+
+    /**
+     * Gets the first move of the winning line
+     * @return : the pillar index of the move, -1 if the win was not proven
+     */
+    public int getMove() {
+        return line.length == 0 ? -1 : line[0];
+    }
+
+    /**
+     * Gets the first move of the winning line in the output format of Main
+     * @return : A String of the format <x,y>, empty if the win was not proven
+     */
+    public String getMoveString() {
+        return new SearchResult(getMove(), 0, 0, nodes).getMoveString();
+    }
+
+    /**
+     * Gets the winning line in the output format of Main
+     * @return : the moves as <x,y> separated by spaces, empty if the win was not proven
+     */
+    public String getLineString() {
+        StringBuilder builder = new StringBuilder();
+
+        for(int pillar : line) {
+            if(builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append('<').append(pillar % 4).append(',').append(pillar / 4).append('>');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Gets the number of nodes that were visited
+     * @return : the node count of the search
+     */
+    public long getNodes() {
+        return nodes;
+    }
+}
@@ -0,0 +1,271 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Depth-first proof-number search (df-pn) that proves or disproves that the player at turn can force a win.
+ * Every node keeps a proof number phi and a disproof number delta from the view of the player at turn, the number
+ * of leaves that still have to be solved to prove respectively disprove that this player gets what it wants.
+ * The winner to be proven is called the attacker. At the attacker's turn "getting what it wants" is completing a line,
+ * at the defender's turn it is preventing that, so a draw counts as a success for the defender.
+ * The search always descends into the child that is closest to a proof, which finds deep forced wins long before a
+ * full-width search of the same depth would. The numbers are kept in a bounded ProofTable, children that are not in the
+ * table start with phi = delta = 1.
+ */
+public class ProofSearch {
+    public static final int INFINITY = 1 << 28;
+    public static final long DEFAULT_MAX_NODES = 10000000;
+
+    //mixed into the hash keys, the numbers depend on the player at turn and the player to be proven
+    private static final long SIDE_KEY     = 0x2D358DCCAA6C78A5L;
+    private static final long ATTACKER_KEY = 0x5851F42D4C957F2DL;
+
+    private final ProofTable table;
+
+    private PIECE attacker;
+    private long nodes;
+    private long maxNodes;
+    private boolean exhausted;  //set once maxNodes is reached, the numbers found so far stay valid
+    private int rootPieces;
+
+    //numbers of the children of the node at every ply, so the search does not allocate per node
+    private final int[][] childPhis = new int[65][16];
+    private final int[][] childDeltas = new int[65][16];
+
+    /**
+     * Creates a new ProofSearch with its own table
+     * @param sizeMb : The size of the ProofTable in MB
+     */
+    public ProofSearch(int sizeMb) {
+        this(new ProofTable(sizeMb));
+    }
+
+    /**
+     * Creates a new ProofSearch that keeps its numbers in the given table
+     * @param table : The ProofTable to use, may be shared with previous searches on the same thread
+     */
+    public ProofSearch(ProofTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Tries to prove that the player at turn can force a win
+     * @param cube : The position, must not be won already
+     * @param player : The player at turn
+     * @param maxNodes : The number of nodes after which the search gives up
+     * @return : The outcome, with the winning line if the win was proven
+     */
+    public ProofResult solve(GameCube cube, PIECE player, long maxNodes) {
+        this.attacker = player;
+        this.nodes = 0;
+        this.maxNodes = maxNodes;
+        this.exhausted = false;
+
+        cube = cube.clone();
+        rootPieces = cube.getPieceCount();
+
+        mid(cube, player, INFINITY, INFINITY);
+
+        int slot = table.find(key(cube, player));
+        if(slot >= 0 && table.getPhi(slot) == 0) {
+            return new ProofResult(ProofResult.Status.PROVEN, winningLine(cube), nodes);
+        }
+        if(slot >= 0 && table.getDelta(slot) == 0) {
+            return new ProofResult(ProofResult.Status.DISPROVEN, new int[0], nodes);
+        }
+        return new ProofResult(ProofResult.Status.UNKNOWN, new int[0], nodes);
+    }
+
+    /**
+     * Expands a node until one of its numbers reaches its threshold ("multiple iterative deepening")
+     * @param cube : The position, unchanged after the call
+     * @param toMove : The player at turn
+     * @param thPhi : The threshold for the proof number
+     * @param thDelta : The threshold for the disproof number
+     */
+    private void mid(GameCube cube, PIECE toMove, int thPhi, int thDelta) {
+        nodes++;
+        if(nodes >= maxNodes) {
+            exhausted = true;
+        }
+
+        long start = nodes;
+        long key = key(cube, toMove);
+        PIECE next = Search.opponent(toMove);
+        int ply = cube.getPieceCount() - rootPieces;
+        int[] phis = childPhis[ply];
+        int[] deltas = childDeltas[ply];
+
+        while(true) {
+            int moves = cube.getLegalMoves();
+            int phi;
+            int delta;
+
+            if(moves == 0) {
+                //the cube is full without a line, a draw is a success only for the defender
+                phi = toMove == attacker ? INFINITY : 0;
+                delta = toMove == attacker ? 0 : INFINITY;
+            }
+            else {
+                //the player at turn succeeds through any child that fails for the opponent, and fails only if all do
+                phi = INFINITY;
+                delta = 0;
+                for(int m = moves; m != 0; m &= m - 1) {
+                    int pillar = Integer.numberOfTrailingZeros(m);
+                    lookupChild(cube, pillar, toMove, phis, deltas);
+                    phi = Math.min(phi, deltas[pillar]);
+                    delta = Math.min(INFINITY, delta + phis[pillar]);
+                }
+            }
+
+            if(phi >= thPhi || delta >= thDelta || exhausted) {
+                table.store(key, phi, delta, nodes - start + 1);
+                return;
+            }
+
+            //descend into the child with the smallest disproof number, until it is no longer the best one
+            int best = -1;
+            int secondDelta = INFINITY;
+            for(int m = moves; m != 0; m &= m - 1) {
+                int pillar = Integer.numberOfTrailingZeros(m);
+                if(best < 0 || deltas[pillar] < deltas[best]) {
+                    if(best >= 0) {
+                        secondDelta = deltas[best];
+                    }
+                    best = pillar;
+                }
+                else if(deltas[pillar] < secondDelta) {
+                    secondDelta = deltas[pillar];
+                }
+            }
+
+            int childThPhi = thDelta - delta + phis[best];
+            int childThDelta = Math.min(thPhi, secondDelta + 1);
+
+            cube.makeMove(best, toMove);
+            mid(cube, next, childThPhi, childThDelta);
+            cube.undoMove(best);
+        }
+    }
+
+    /**
+     * Gets the numbers of a child, from the view of the player at turn in the child
+     * @param cube : The position, unchanged after the call
+     * @param pillar : The move leading to the child
+     * @param toMove : The player making the move
+     * @param phis : Receives the proof number at index pillar
+     * @param deltas : Receives the disproof number at index pillar
+     */
+    private void lookupChild(GameCube cube, int pillar, PIECE toMove, int[] phis, int[] deltas) {
+        int cell = cube.makeMove(pillar, toMove);
+        PIECE next = Search.opponent(toMove);
+
+        if(cube.hasWonThrough(toMove, cell)) {
+            //the player at turn in the child has lost
+            phis[pillar] = INFINITY;
+            deltas[pillar] = 0;
+        }
+        else if(cube.getLegalMoves() == 0) {
+            phis[pillar] = next == attacker ? INFINITY : 0;
+            deltas[pillar] = next == attacker ? 0 : INFINITY;
+        }
+        else {
+            int slot = table.find(key(cube, next));
+            phis[pillar] = slot < 0 ? 1 : table.getPhi(slot);
+            deltas[pillar] = slot < 0 ? 1 : table.getDelta(slot);
+        }
+
+        cube.undoMove(pillar);
+    }
+
+    /**
+     * Reads the winning line of a proven position out of the table.
+     * The attacker plays a move whose child is disproven for the defender, the defender the reply that took the most
+     * work to refute. Parts of the proof that were replaced in the table are searched again within the node limit.
+     * @param cube : The proven position with the attacker at turn, the moves of the line are played on it
+     * @return : the pillar indices of the line
+     */
+    private int[] winningLine(GameCube cube) {
+        List<Integer> line = new ArrayList<Integer>();
+        PIECE toMove = attacker;
+        int[] phis = new int[16];
+        int[] deltas = new int[16];
+
+        while(true) {
+            int moves = cube.getLegalMoves();
+            int chosen = -1;
+
+            if(toMove == attacker) {
+                for(int m = moves; m != 0 && chosen < 0; m &= m - 1) {
+                    int pillar = Integer.numberOfTrailingZeros(m);
+                    int cell = cube.makeMove(pillar, toMove);
+                    if(cube.hasWonThrough(toMove, cell)) {
+                        chosen = pillar;
+                    }
+                    cube.undoMove(pillar);
+                }
+                if(chosen >= 0) {
+                    line.add(chosen);
+                    break;
+                }
+
+                for(int attempt = 0; attempt < 2 && chosen < 0; attempt++) {
+                    for(int m = moves; m != 0 && chosen < 0; m &= m - 1) {
+                        int pillar = Integer.numberOfTrailingZeros(m);
+                        lookupChild(cube, pillar, toMove, phis, deltas);
+                        if(deltas[pillar] == 0) {
+                            chosen = pillar;
+                        }
+                    }
+                    if(chosen < 0 && attempt == 0 && !exhausted) {
+                        mid(cube, toMove, INFINITY, INFINITY);
+                    }
+                }
+            }
+            else {
+                int mostWork = -1;
+                for(int m = moves; m != 0; m &= m - 1) {
+                    int pillar = Integer.numberOfTrailingZeros(m);
+                    cube.makeMove(pillar, toMove);
+                    int slot = table.find(key(cube, attacker));
+                    int work = slot < 0 ? 0 : table.getWork(slot);
+                    cube.undoMove(pillar);
+
+                    if(work > mostWork) {
+                        mostWork = work;
+                        chosen = pillar;
+                    }
+                }
+            }
+
+            if(chosen < 0) {
+                break;
+            }
+            line.add(chosen);
+            cube.makeMove(chosen, toMove);
+            toMove = Search.opponent(toMove);
+        }
+
+        int[] pillars = new int[line.size()];
+        for(int i = 0; i < pillars.length; i++) {
+            pillars[i] = line.get(i);
+        }
+        return pillars;
+    }
+
+    /**
+     * Calculates the hash key of a position for the ProofTable
+     * @param cube : The position
+     * @param toMove : The player at turn
+     * @return : The canonical hash combined with the player at turn and the attacker
+     */
+    private long key(GameCube cube, PIECE toMove) {
+        long key = cube.getCanonicalHash();
+        if(toMove == PIECE.PLAYER_2) key ^= SIDE_KEY;
+        if(attacker == PIECE.PLAYER_2) key ^= ATTACKER_KEY;
+        return key;
+    }
+}
@@ -0,0 +1,125 @@
+package de.dualshower;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size hash table for the proof and disproof numbers of a ProofSearch, stored in primitive arrays.
+ * Every bucket has two slots. A new position replaces the slot whose subtree took less work to search,
+ * so the expensive results, and with them most of the proof, stay in the table when it is full.
+ * Unlike the TranspositionTable it is used by a single thread only.
+ */
+public class ProofTable {
+    private static final int SLOT_BYTES = 20;   //8 byte key + 4 byte phi + 4 byte delta + 4 byte work
+
+    private final long[] keys;
+    private final int[] phis;
+    private final int[] deltas;
+    private final int[] work;       //nodes spent on the subtree, 0 marks an empty slot
+    private final int bucketMask;
+
+    /**
+     * Creates a new, empty table
+     * @param sizeMb : The memory to use in MB, rounded down to a power of two number of slots
+     */
+    public ProofTable(int sizeMb) {
+        long maxSlots = Math.max(2L, (long) sizeMb * 1024 * 1024 / SLOT_BYTES);
+        int slots = (int) Long.highestOneBit(Math.min(maxSlots, 1L << 30));
+
+        this.keys = new long[slots];
+        this.phis = new int[slots];
+        this.deltas = new int[slots];
+        this.work = new int[slots];
+        this.bucketMask = (slots >> 1) - 1;
+    }
+
+    /**
+     * Looks up a position
+     * @param key : The hash key of the position
+     * @return : The slot of the position, -1 if it is not in the table
+     */
+    public int find(long key) {
+        int index = index(key);
+
+        if(keys[index] == key && work[index] != 0) {
+            return index;
+        }
+        if(keys[index + 1] == key && work[index + 1] != 0) {
+            return index + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Stores the numbers of a position
+     * @param key : The hash key of the position
+     * @param phi : The proof number from the view of the player at turn
+     * @param delta : The disproof number from the view of the player at turn
+     * @param nodes : The nodes spent on the position, decides what is replaced
+     */
+    public void store(long key, int phi, int delta, long nodes) {
+        int index = find(key);
+
+        if(index < 0) {
+            index = index(key);
+            if(work[index + 1] < work[index]) {
+                index++;
+            }
+        }
+
+        keys[index] = key;
+        phis[index] = phi;
+        deltas[index] = delta;
+        work[index] = (int) Math.max(1, Math.min(nodes, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Gets the proof number of a slot
+     * @param slot : a slot returned by find
+     * @return : the proof number
+     */
+    public int getPhi(int slot) {
+        return phis[slot];
+    }
+
+    /**
+     * Gets the disproof number of a slot
+     * @param slot : a slot returned by find
+     * @return : the disproof number
+     */
+    public int getDelta(int slot) {
+        return deltas[slot];
+    }
+
+    /**
+     * Gets the work spent on the position of a slot
+     * @param slot : a slot returned by find
+     * @return : the number of nodes
+     */
+    public int getWork(int slot) {
+        return work[slot];
+    }
+
+    /**
+     * Removes all entries
+     */
+    public void clear() {
+        Arrays.fill(work, 0);
+    }
+
+    /**
+     * Gets the number of slots
+     * @return : the capacity of the table in entries
+     */
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    /**
+     * Calculates the first slot of the bucket of a key
+     * @param key : The hash key
+     * @return : the slot index
+     */
+    private int index(long key) {
+        return ((int) (key ^ (key >>> 32)) & bucketMask) << 1;
+    }
+}
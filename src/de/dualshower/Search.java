@@ -0,0 +1,762 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+import jdk.jfr.FlightRecorder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Depth-first negamax search with alpha-beta pruning.
+ * Moves are generated while searching and played on a single cube with makeMove/undoMove,
+ * so the search does not allocate per node and only keeps the current path in memory.
+ * Results are cached in a TranspositionTable under the canonical hash of the position, so positions reached through
+ * different move orders, and mirrored or rotated versions of them, are searched once. For the same reason root moves
+ * that lead to symmetric positions are only searched once.
+ * The search runs either to a fixed depth or by iterative deepening within a time budget.
+ * Leaves are rated by GameCube.evaluate, which gives the same result as Main.rateGameCube in O(1).
+ * They are rated from the view of the player at turn at the root, so for a fixed depth
+ * the result matches Main.buildTree + Main.calculateScore + Main.getBestMove. Unlike the tree, the search does not
+ * continue below positions in which a player has already completed a line.
+ * Iterative deepening also uses the threats of the cube: a playable own threat wins at once, two playable enemy
+ * threats lose, a single one leaves its block as the only move and that block is searched without using up depth.
+ * This looks past the horizon, so it is left out of the fixed depth search, and the two keep their results apart in
+ * the table. Both searches order wins and blocks of playable threats first.
+ * Every search counts its nodes, leaves, cutoffs and table hits in plain fields of its own thread, see getStats(),
+ * and emits a SearchEvent and IterationEvents while JDK Flight Recorder is running.
+ */
+public class Search {
+    private static final int NO_MOVE = Integer.MIN_VALUE;  //returned by searchMove for a full pillar
+
+    //mixed into the hash keys, since scores depend on the player at turn and the player at the root
+    private static final long SIDE_KEY        = 0x2D358DCCAA6C78A5L;
+    private static final long PERSPECTIVE_KEY = 0x8BB84B93962EACC9L;
+    private static final long FIXED_DEPTH_KEY = 0x5F7D4E1C3A2B6990L;   //results without threats differ from the ones with
+
+    private static final int HISTORY_LIMIT = 1 << 20;   //all history scores are halved once one reaches this
+    private static final int MAX_EXTENSION_FACTOR = 2;  //forced moves are extended up to this multiple of the root depth
+
+    private final TranspositionTable table;
+
+    //move ordering, indexed by the ply below the root
+    private final int[][] moveLists = new int[65][16];
+    private final int[][] killers = new int[65][2];     //the last two quiet moves that caused a cutoff, -1 if none
+    private final int[][] history = new int[2][16];     //cutoffs per player and pillar, weighted by depth * depth
+
+    private PIECE player;   //the player at turn at the root, all leaves are rated from that player's view
+    private boolean forcing;    //true if threats decide positions and forced blocks are extended, see the class comment
+    private long nodes;     //number of visited nodes in the current search
+    private int rootMoves;  //mask of the root moves that lead to pairwise non-symmetric positions
+    private long deadline;  //System.nanoTime() at which the search has to stop
+    private volatile boolean stopped;   //set once the deadline has passed or stop() was called, all scores after that are invalid
+
+    //statistics of the current search, only touched by the searching thread
+    private long leaves;
+    private long interiorNodes;
+    private long betaCutoffs;
+    private long firstMoveCutoffs;
+    private long forcedNodes;   //nodes decided by a playable threat or left with a single block
+    private long extensions;
+    private int rootDepth;
+    private long tableProbes;
+    private long tableHits;
+    private int maxPly;
+    private int rootPieces;
+    private long startTime;
+    private SearchStats stats;
+    private boolean recording;  //true if JFR runs, the event classes are not even loaded otherwise since that takes a few hundred ms
+
+    /**
+     * Creates a new Search with its own TranspositionTable of the default size
+     */
+    public Search() {
+        this(new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB));
+    }
+
+    /**
+     * Creates a new Search that caches its results in the given table
+     * @param table : The TranspositionTable to use, may be shared with previous searches
+     */
+    public Search(TranspositionTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Searches the best move for the player at turn to a fixed depth, without threats and extensions,
+     * so the result is the one of Main.buildTree + Main.calculateScore + Main.getBestMove
+     * @param cube : The position to search
+     * @param player : The player at turn
+     * @param depth : The depth to search in plies
+     * @return : The best move found together with its score
+     */
+    public SearchResult search(GameCube cube, PIECE player, int depth) {
+        cube = cube.clone();
+        start(cube, player, false);
+
+        SearchResult result = searchRoot(cube, depth, -1);
+        stats = collectStats();
+        stats.addIteration(depth, System.nanoTime() - startTime, nodes);
+        return result;
+    }
+
+    /**
+     * Searches with increasing depth until the time budget is used up or the result is decided.
+     * Depth 1 is always completed, every further iteration starts with the best move of the previous one.
+     * @param cube : The position to search
+     * @param player : The player at turn
+     * @param timeBudget : The time budget in milliseconds
+     * @return : The result of the deepest completed iteration
+     */
+    public SearchResult iterativeDeepening(GameCube cube, PIECE player, long timeBudget) {
+        return iterativeDeepening(cube, player, System.nanoTime() + timeBudget * 1000000L, 0);
+    }
+
+    /**
+     * Searches with increasing depth until the deadline has passed, stop() is called or the result is decided
+     * @param cube : The position to search
+     * @param player : The player at turn
+     * @param deadline : The System.nanoTime() at which the search stops, Long.MAX_VALUE to run until stop()
+     * @param depthOffset : Number of depths to skip after depth 1, used to spread the helpers of a ParallelSearch
+     * @return : The result of the deepest completed iteration
+     */
+    public SearchResult iterativeDeepening(GameCube cube, PIECE player, long deadline, int depthOffset) {
+        return iterativeDeepening(cube, player, deadline, depthOffset, 2);
+    }
+
+    /**
+     * Searches with increasing depth, skipping the depths the table already holds results for.
+     * Depth 1 is always searched, so there is a move even if the first deeper iteration does not finish.
+     * @param cube : The position to search
+     * @param player : The player at turn
+     * @param deadline : The System.nanoTime() at which the search stops, Long.MAX_VALUE to run until stop()
+     * @param depthOffset : Number of depths to skip after depth 1, used to spread the helpers of a ParallelSearch
+     * @param firstDepth : The depth to continue with after depth 1, e.g. tableDepth of the position
+     * @return : The result of the deepest completed iteration
+     */
+    public SearchResult iterativeDeepening(GameCube cube, PIECE player, long deadline, int depthOffset, int firstDepth) {
+        recording = FlightRecorder.isInitialized();
+        SearchEvent event = recording ? new SearchEvent() : null;
+        if(recording) {
+            event.begin();
+        }
+
+        cube = cube.clone();
+        start(cube, player, true);
+        int maxDepth = 64 - cube.getPieceCount();
+        List<long[]> iterations = new ArrayList<long[]>();
+
+        SearchResult best = searchRoot(cube, 1, -1);
+        boolean stopRequested = false;
+        while(stopped) {
+            //depth 1 has to finish for a move, a stop that arrived during it is applied afterwards
+            stopRequested = true;
+            stopped = false;
+            best = searchRoot(cube, 1, -1);
+        }
+        if(stopRequested) {
+            stopped = true;
+        }
+        iterationDone(iterations, best);
+        this.deadline = deadline;
+
+        //a retained best move of the table is better than the one of depth 1, unless depth 1 already decided the game
+        int firstMove = firstDepth > 2 ? tableMove(table, cube, player, player) : -1;
+        if(firstMove >= 0 && (rootMoves & (1 << firstMove)) != 0 && Math.abs(best.getScore()) < Main.PLUS_INFINITY) {
+            best = new SearchResult(firstMove, best.getScore(), best.getDepth(), best.getNodes());
+        }
+
+        for(int depth = Math.max(2, firstDepth) + depthOffset; depth <= maxDepth; depth++) {
+            //a won or lost game does not get any better by searching deeper
+            if(Math.abs(best.getScore()) >= Main.PLUS_INFINITY) {
+                break;
+            }
+
+            SearchResult result = searchRoot(cube, depth, best.getMove());
+            if(stopped) {
+                break;
+            }
+            best = result;
+            iterationDone(iterations, best);
+        }
+
+        stats = collectStats();
+        for(long[] iteration : iterations) {
+            stats.addIteration((int) iteration[0], iteration[1], iteration[2]);
+        }
+
+        if(recording) {
+            commitSearchEvent(event, best);
+        }
+
+        return new SearchResult(best.getMove(), best.getScore(), best.getDepth(), nodes);
+    }
+
+    /**
+     * Fills and commits the SearchEvent of an iterative deepening search
+     * @param event : The event started at the beginning of the search
+     * @param best : The result of the search
+     */
+    private void commitSearchEvent(SearchEvent event, SearchResult best) {
+        event.end();
+        if(event.shouldCommit()) {
+            event.pieces = rootPieces;
+            event.depth = best.getDepth();
+            event.maxPly = maxPly;
+            event.nodes = nodes;
+            event.leaves = leaves;
+            event.betaCutoffs = betaCutoffs;
+            event.firstMoveCutoffs = firstMoveCutoffs;
+            event.forcedNodes = forcedNodes;
+            event.extensions = extensions;
+            event.tableProbes = tableProbes;
+            event.tableHits = tableHits;
+            event.score = best.getScore();
+            event.commit();
+        }
+    }
+
+    /**
+     * Stops a running search, it returns the result of its deepest completed iteration.
+     * May be called from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Gets the number of nodes visited so far by the current or last search
+     * @return : the node count
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Gets the TranspositionTable the results are cached in
+     * @return : the table
+     */
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Gets the statistics of the last completed search. Must not be called while this Search is running.
+     * @return : the statistics, null if nothing was searched yet
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Prepares the fields for a new search
+     * @param cube : The root position, owned by this search
+     * @param player : The player at turn
+     * @param forcing : true to use threats and extensions
+     */
+    private void start(GameCube cube, PIECE player, boolean forcing) {
+        this.player = player;
+        this.forcing = forcing;
+        this.nodes = 1;
+        this.deadline = Long.MAX_VALUE;
+        this.stopped = false;
+
+        leaves = 0;
+        interiorNodes = 0;
+        betaCutoffs = 0;
+        firstMoveCutoffs = 0;
+        forcedNodes = 0;
+        extensions = 0;
+        tableProbes = 0;
+        tableHits = 0;
+        maxPly = 0;
+        rootPieces = cube.getPieceCount();
+        startTime = System.nanoTime();
+
+        for(int[] killer : killers) {
+            killer[0] = -1;
+            killer[1] = -1;
+        }
+        for(int[] scores : history) {
+            Arrays.fill(scores, 0);
+        }
+
+        rootMoves = uniqueMoves(cube, player);
+    }
+
+    /**
+     * Records a completed iteration and emits its IterationEvent
+     * @param iterations : The {depth, nanoseconds, nodes} of the iterations so far
+     * @param result : The result of the completed iteration
+     */
+    private void iterationDone(List<long[]> iterations, SearchResult result) {
+        long previousNodes = iterations.isEmpty() ? 0 : iterations.get(iterations.size() - 1)[3];
+        long previousTime = iterations.isEmpty() ? startTime : iterations.get(iterations.size() - 1)[4];
+        long now = System.nanoTime();
+
+        iterations.add(new long[] {result.getDepth(), now - previousTime, nodes - previousNodes, nodes, now});
+
+        if(!recording) {
+            return;
+        }
+
+        IterationEvent event = new IterationEvent();
+        if(event.shouldCommit()) {
+            event.depth = result.getDepth();
+            event.nodes = nodes - previousNodes;
+            event.move = result.getMove();
+            event.score = result.getScore();
+            event.commit();
+        }
+    }
+
+    /**
+     * Collects the counters of the current search
+     * @return : the statistics without iterations
+     */
+    private SearchStats collectStats() {
+        return new SearchStats(nodes, leaves, interiorNodes, betaCutoffs, firstMoveCutoffs, forcedNodes, extensions,
+                tableProbes, tableHits, maxPly, rootPieces, System.nanoTime() - startTime);
+    }
+
+    /**
+     * Searches all moves of the root position to a fixed depth
+     * @param cube : The position to search
+     * @param depth : The depth to search in plies
+     * @param firstMove : The pillar to try first, -1 for index order
+     * @return : The best move and its score, only valid if the search was not stopped
+     */
+    private SearchResult searchRoot(GameCube cube, int depth, int firstMove) {
+        rootDepth = depth;
+        int alpha = Main.MINUS_INFINITY - 1;
+        int beta = Main.PLUS_INFINITY + 1;
+        int bestMove = -1;
+        int bestScore = alpha;
+
+        for(int i = -1; i < 16; i++) {
+            int pillar = i < 0 ? firstMove : i;
+
+            if(pillar < 0 || (i >= 0 && pillar == firstMove) || (rootMoves & (1 << pillar)) == 0) {
+                continue;
+            }
+
+            int score = searchMove(cube, pillar, player, depth, Math.max(alpha, bestScore), beta);
+
+            if(stopped) {
+                break;
+            }
+            if(score == NO_MOVE) {
+                continue;
+            }
+
+            //first legal move is kept even if it loses, later moves only if they are strictly better
+            if(bestMove < 0 || score > bestScore) {
+                bestMove = pillar;
+                bestScore = score;
+            }
+        }
+
+        if(bestMove < 0) {
+            bestScore = rate(cube, player);
+        }
+
+        return new SearchResult(bestMove, bestScore, depth, nodes);
+    }
+
+    /**
+     * Recursive negamax function
+     * @param cube : The current position
+     * @param toMove : The player at turn in this position
+     * @param depth : The remaining depth
+     * @param alpha : The lower bound of the search window
+     * @param beta : The upper bound of the search window
+     * @return : The score of the position from the view of toMove
+     */
+    private int negamax(GameCube cube, PIECE toMove, int depth, int alpha, int beta) {
+        nodes++;
+
+        if((nodes & 1023) == 0 && System.nanoTime() > deadline) {
+            stopped = true;
+        }
+        if(stopped) {
+            return 0;
+        }
+
+        int ply = cube.getPieceCount() - rootPieces;
+        if(ply > maxPly) {
+            maxPly = ply;
+        }
+
+        int symmetry = cube.getCanonicalSymmetry();
+        long key = key(cube.getSymmetricHash(symmetry), toMove);
+        int entry = table.probe(key);
+        int hashMove = -1;
+
+        tableProbes++;
+        if(entry != 0) {
+            tableHits++;
+
+            //moves are stored for the canonical form of the position
+            hashMove = TranspositionTable.move(entry);
+            if(hashMove >= 0) {
+                hashMove = GameCube.transformPillar(symmetry, hashMove, true);
+            }
+
+            if(TranspositionTable.depth(entry) >= depth) {
+                int score = TranspositionTable.score(entry);
+
+                switch(TranspositionTable.bound(entry)) {
+                    case TranspositionTable.EXACT:
+                        return Math.max(alpha, Math.min(beta, score));
+                    case TranspositionTable.LOWER_BOUND:
+                        if(score >= beta) return beta;
+                        break;
+                    case TranspositionTable.UPPER_BOUND:
+                        if(score <= alpha) return alpha;
+                        break;
+                }
+            }
+        }
+
+        //a playable threat wins at once, two playable threats of the opponent cannot both be blocked.
+        //Without forcing the threats only order the moves, so the node is searched like any other.
+        long drops = cube.getDropCells();
+        long ownThreats = cube.getThreats(toMove);
+        long enemyThreats = cube.getThreats(opponent(toMove));
+        long wins = ownThreats & drops;
+        long blocks = enemyThreats & drops;
+
+        if(forcing && (wins != 0 || Long.bitCount(blocks) > 1)) {
+            leaves++;
+            forcedNodes++;
+            int score = wins != 0 ? Main.PLUS_INFINITY : Main.MINUS_INFINITY;
+            int move = wins != 0 ? GameCube.transformPillar(symmetry, Long.numberOfTrailingZeros(wins) & 15, false) : -1;
+            table.store(key, depth, TranspositionTable.EXACT, score, move);
+            return score;
+        }
+
+        //a forced block does not use up depth, so forcing sequences are followed past the horizon
+        int extension = forcing && blocks != 0 && ply < MAX_EXTENSION_FACTOR * rootDepth ? 1 : 0;
+
+        if(depth == 0 && extension == 0) {
+            leaves++;
+            int score = rate(cube, toMove);
+            table.store(key, 0, TranspositionTable.EXACT, score, -1);
+            return score;
+        }
+
+        int[] moves = moveLists[ply];
+        int count;
+        if(forcing && blocks != 0) {
+            forcedNodes++;
+            extensions += extension;
+            moves[0] = Long.numberOfTrailingZeros(blocks) & 15;
+            count = 1;
+        }
+        else {
+            count = orderMoves(cube, toMove, hashMove, ply, moves, drops, ownThreats, enemyThreats);
+        }
+        int bestMove = -1;
+        int bound = TranspositionTable.UPPER_BOUND;
+
+        //cube is full
+        if(count == 0) {
+            leaves++;
+            int score = rate(cube, toMove);
+            table.store(key, depth, TranspositionTable.EXACT, score, -1);
+            return score;
+        }
+        interiorNodes++;
+
+        for(int i = 0; i < count; i++) {
+            int pillar = moves[i];
+            int score = searchMove(cube, pillar, toMove, depth + extension, alpha, beta);
+
+            if(stopped) {
+                return 0;
+            }
+
+            if(score >= beta) {
+                betaCutoffs++;
+                if(i == 0) {
+                    firstMoveCutoffs++;
+                }
+                if(score < Main.PLUS_INFINITY) {
+                    recordCutoff(toMove, pillar, ply, depth);
+                }
+                table.store(key, depth, TranspositionTable.LOWER_BOUND, beta, GameCube.transformPillar(symmetry, pillar, false));
+                return beta;
+            }
+            if(score > alpha) {
+                alpha = score;
+                bestMove = pillar;
+                bound = TranspositionTable.EXACT;
+            }
+        }
+
+        if(bestMove >= 0) {
+            bestMove = GameCube.transformPillar(symmetry, bestMove, false);
+        }
+        table.store(key, depth, bound, alpha, bestMove);
+        return alpha;
+    }
+
+    /**
+     * Sorts the legal moves of a position by their chance to cause a cutoff: immediate wins, blocks of a playable threat
+     * of the opponent, the hash move, the killer moves of the ply and then all others by their history score. Ties are
+     * broken by the number of lines through the cell the piece lands in, which favours the centre and corners.
+     * Moves below an own threat let the opponent block it and are searched last. Moves below a threat of the opponent
+     * lose at once, with forcing they are left out unless there is no other move, without they are searched last too.
+     * @param cube : The position, with forcing without a playable threat of either player
+     * @param toMove : The player at turn
+     * @param hashMove : The best move of an earlier visit, -1 if none
+     * @param ply : The ply below the root
+     * @param moves : Receives the pillar indices in search order
+     * @param drops : The drop cells of the position
+     * @param ownThreats : The threat cells of toMove
+     * @param enemyThreats : The threat cells of the opponent
+     * @return : the number of moves to search
+     */
+    private int orderMoves(GameCube cube, PIECE toMove, int hashMove, int ply, int[] moves, long drops, long ownThreats,
+                           long enemyThreats) {
+        int legal = cube.getLegalMoves();
+        int count = 0;
+
+        int losing = GameCube.toPillars((drops << 16) & enemyThreats);
+        if(forcing && (legal & ~losing) != 0) {
+            legal &= ~losing;
+        }
+        int late = GameCube.toPillars((drops << 16) & ownThreats) | losing;
+
+        for(int urgent = GameCube.toPillars(ownThreats & drops) | GameCube.toPillars(enemyThreats & drops) << 16;
+            urgent != 0; urgent &= urgent - 1) {
+            int pillar = Integer.numberOfTrailingZeros(urgent) & 15;
+            if((legal & (1 << pillar)) != 0) {
+                moves[count++] = pillar;
+                legal &= ~(1 << pillar);
+            }
+        }
+
+        if(hashMove >= 0 && (legal & (1 << hashMove)) != 0) {
+            moves[count++] = hashMove;
+            legal &= ~(1 << hashMove);
+        }
+
+        for(int killer : killers[ply]) {
+            if(killer >= 0 && (legal & (1 << killer)) != 0) {
+                moves[count++] = killer;
+                legal &= ~(1 << killer);
+            }
+        }
+
+        //insertion sort of the quiet moves, at most 16
+        int[] scores = history[toMove == PIECE.PLAYER_1 ? 0 : 1];
+        int first = count;
+        for(; legal != 0; legal &= legal - 1) {
+            int pillar = Integer.numberOfTrailingZeros(legal);
+            int value = moveValue(cube, scores, pillar, late);
+            int i = count++;
+
+            while(i > first && moveValue(cube, scores, moves[i - 1], late) < value) {
+                moves[i] = moves[i - 1];
+                i--;
+            }
+            moves[i] = pillar;
+        }
+        return count;
+    }
+
+    /**
+     * Calculates the ordering value of a quiet move
+     * @param cube : The position
+     * @param scores : The history scores of the player at turn
+     * @param pillar : The pillar index of the move
+     * @param late : The pillars whose move is below a threat
+     * @return : the history score with the number of lines through the landing cell as tie breaker, negative for a
+     *           move below a threat
+     */
+    private static int moveValue(GameCube cube, int[] scores, int pillar, int late) {
+        int value = (scores[pillar] << 3) | GameCube.LINES_THROUGH_CELL[cube.getDropCell(pillar)].length;
+        return (late & (1 << pillar)) != 0 ? value - (1 << 30) : value;
+    }
+
+    /**
+     * Remembers a quiet move that caused a cutoff as killer of its ply and in the history table
+     * @param toMove : The player making the move
+     * @param pillar : The pillar index of the move
+     * @param ply : The ply below the root
+     * @param depth : The remaining depth, deeper cutoffs count more
+     */
+    private void recordCutoff(PIECE toMove, int pillar, int ply, int depth) {
+        int[] killer = killers[ply];
+        if(killer[0] != pillar) {
+            killer[1] = killer[0];
+            killer[0] = pillar;
+        }
+
+        int[] scores = history[toMove == PIECE.PLAYER_1 ? 0 : 1];
+        scores[pillar] += depth * depth;
+        if(scores[pillar] >= HISTORY_LIMIT) {
+            for(int[] player : history) {
+                for(int i = 0; i < player.length; i++) {
+                    player[i] >>= 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Plays a move on the cube, searches the resulting position and takes the move back
+     * @param cube : The position to play the move in, unchanged after the call
+     * @param pillar : The pillar index of the move
+     * @param toMove : The player making the move
+     * @param depth : The remaining depth including this move
+     * @param alpha : The lower bound of the search window
+     * @param beta : The upper bound of the search window
+     * @return : The score of the move from the view of toMove, NO_MOVE if the pillar is full
+     */
+    private int searchMove(GameCube cube, int pillar, PIECE toMove, int depth, int alpha, int beta) {
+        if(!cube.canPlay(pillar)) {
+            return NO_MOVE;
+        }
+
+        int cell = cube.makeMove(pillar, toMove);
+        int score;
+
+        //the game is over, no need to look any further
+        if(cube.hasWonThrough(toMove, cell)) {
+            nodes++;
+            leaves++;
+            score = Main.PLUS_INFINITY;
+        }
+        else {
+            score = -negamax(cube, opponent(toMove), depth - 1, -beta, -alpha);
+        }
+
+        cube.undoMove(pillar);
+        return score;
+    }
+
+    /**
+     * Rates a position with the incremental evaluation of the cube
+     * @param cube : The position to rate
+     * @param toMove : The player at turn
+     * @return : The rating from the view of toMove
+     */
+    private int rate(GameCube cube, PIECE toMove) {
+        int score = cube.evaluate(player);
+        return toMove == player ? score : -score;
+    }
+
+    /**
+     * Finds the moves that lead to different positions, a move that leads to a mirrored or rotated version of the
+     * position after an earlier move has the same score and is left out
+     * @param cube : The root position
+     * @param toMove : The player at turn
+     * @return : A 16 bit mask of the pillars to search
+     */
+    private static int uniqueMoves(GameCube cube, PIECE toMove) {
+        long[] seen = new long[16];
+        int count = 0;
+        int moves = 0;
+
+        for(int pillar = 0; pillar < 16; pillar++) {
+            if(!cube.canPlay(pillar)) {
+                continue;
+            }
+
+            cube.makeMove(pillar, toMove);
+            long hash = cube.getCanonicalHash();
+            cube.undoMove(pillar);
+
+            boolean duplicate = false;
+            for(int i = 0; i < count; i++) {
+                duplicate |= seen[i] == hash;
+            }
+
+            if(!duplicate) {
+                seen[count++] = hash;
+                moves |= 1 << pillar;
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Calculates the hash key of a position for the TranspositionTable
+     * @param key : The canonical hash of the position
+     * @param toMove : The player at turn
+     * @return : The hash combined with the player at turn, the player at the root and the kind of search
+     */
+    private long key(long key, PIECE toMove) {
+        return forcing ? tableKey(key, player, toMove) : tableKey(key, player, toMove) ^ FIXED_DEPTH_KEY;
+    }
+
+    /**
+     * Looks up the best move the table holds for a position inside a search from the given root player's view
+     * @param table : The TranspositionTable of the search
+     * @param cube : The position
+     * @param rootPlayer : The player at turn at the root of the search
+     * @param toMove : The player at turn in the position
+     * @return : The pillar index of the stored move, -1 if there is none or it is not legal
+     */
+    public static int tableMove(TranspositionTable table, GameCube cube, PIECE rootPlayer, PIECE toMove) {
+        int symmetry = cube.getCanonicalSymmetry();
+        int entry = table.probe(tableKey(cube.getSymmetricHash(symmetry), rootPlayer, toMove));
+        int move = entry == 0 ? -1 : TranspositionTable.move(entry);
+        if(move < 0) {
+            return -1;
+        }
+
+        move = GameCube.transformPillar(symmetry, move, true);
+        return cube.canPlay(move) ? move : -1;
+    }
+
+    /**
+     * Looks up how deep the table has searched a position inside a search from the given root player's view
+     * @param table : The TranspositionTable of the search
+     * @param cube : The position
+     * @param rootPlayer : The player at turn at the root of the search
+     * @param toMove : The player at turn in the position
+     * @return : The stored remaining depth, 0 if there is no entry
+     */
+    public static int tableDepth(TranspositionTable table, GameCube cube, PIECE rootPlayer, PIECE toMove) {
+        int entry = table.probe(tableKey(cube.getCanonicalHash(), rootPlayer, toMove));
+        return entry == 0 ? 0 : TranspositionTable.depth(entry);
+    }
+
+    /**
+     * Combines a canonical hash with the players into a key of the TranspositionTable
+     * @param hash : The canonical hash of the position
+     * @param rootPlayer : The player at turn at the root of the search
+     * @param toMove : The player at turn in the position
+     * @return : the key as used by negamax
+     */
+    private static long tableKey(long hash, PIECE rootPlayer, PIECE toMove) {
+        if(toMove == PIECE.PLAYER_2) hash ^= SIDE_KEY;
+        if(rootPlayer == PIECE.PLAYER_2) hash ^= PERSPECTIVE_KEY;
+        return hash;
+    }
+
+    /**
+     * Calculates the key of a root position, as used by the TranspositionTable and the OpeningBook
+     * @param cube : The position
+     * @param player : The player at turn
+     * @return : The canonical hash of the cube combined with the player at turn
+     */
+    public static long positionKey(GameCube cube, PIECE player) {
+        long key = cube.getCanonicalHash();
+
+        if(player == PIECE.PLAYER_2) key ^= SIDE_KEY ^ PERSPECTIVE_KEY;
+        return key;
+    }
+
+    /**
+     * Gets the opposing player
+     * @param piece : The piece of a player
+     * @return : The piece of the other player
+     */
+    public static PIECE opponent(PIECE piece) {
+        return piece == PIECE.PLAYER_1 ? PIECE.PLAYER_2 : PIECE.PLAYER_1;
+    }
+}
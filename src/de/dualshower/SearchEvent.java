@@ -0,0 +1,57 @@
+package de.dualshower;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event covering one iterative deepening search of one thread
+ */
+@Name("de.dualshower.Search")
+@Label("Search")
+@Category("Connect Four")
+@Description("One iterative deepening search of a single search thread")
+public class SearchEvent extends Event {
+    @Label("Pieces")
+    @Description("Number of pieces in the root position")
+    int pieces;
+
+    @Label("Depth")
+    @Description("Deepest completed iteration")
+    int depth;
+
+    @Label("Max Ply")
+    int maxPly;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Leaves")
+    long leaves;
+
+    @Label("Beta Cutoffs")
+    long betaCutoffs;
+
+    @Label("First Move Cutoffs")
+    @Description("Beta cutoffs caused by the first move searched")
+    long firstMoveCutoffs;
+
+    @Label("Forced Nodes")
+    @Description("Nodes decided by a playable threat or left with a single block")
+    long forcedNodes;
+
+    @Label("Extensions")
+    @Description("Forced moves searched without using up depth")
+    long extensions;
+
+    @Label("Table Probes")
+    long tableProbes;
+
+    @Label("Table Hits")
+    long tableHits;
+
+    @Label("Score")
+    int score;
+}
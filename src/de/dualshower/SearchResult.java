@@ -0,0 +1,65 @@
+package de.dualshower;
+
+public class SearchResult {
+    private final int move;
+    private final int score;
+    private final int depth;
+    private final long nodes;
+
+    /**
+     * Creates a new result of a search
+     * @param move : The pillar index (column + 4 * row) of the best move, -1 if there is no legal move
+     * @param score : The score of the best move from the view of the player at turn
+     * @param depth : The depth that was searched
+     * @param nodes : The number of nodes that were visited
+     */
+    public SearchResult(int move, int score, int depth, long nodes) {
+        this.move = move;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Gets the pillar index of the best move
+     * @return : column + 4 * row of the best move, -1 if there is no legal move
+     */
+    public int getMove() {
+        return move;
+    }
+
+    /**
+     * Gets the best move in the output format of Main
+     * @return : A String of the format <x,y>, empty if there is no legal move
+     */
+    public String getMoveString() {
+        if(move < 0) {
+            return "";
+        }
+        return "<" + move % 4 + "," + move / 4 + ">";
+    }
+
+    /**
+     * Gets the score of the best move
+     * @return : the score from the view of the player at turn
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Gets the depth that was searched
+     * @return : the search depth in plies
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Gets the number of nodes that were visited
+     * @return : the node count of the search
+     */
+    public long getNodes() {
+        return nodes;
+    }
+}
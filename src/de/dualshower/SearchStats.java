@@ -0,0 +1,211 @@
+package de.dualshower;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counters of a search. Every Search counts on its own thread without any synchronization,
+ * the counters of the threads of a ParallelSearch are added up afterwards.
+ */
+public class SearchStats {
+    private long nodes;
+    private long leaves;            //nodes rated by the evaluation, full cubes and won positions
+    private long interiorNodes;     //nodes whose moves were searched
+    private long betaCutoffs;
+    private long firstMoveCutoffs;  //cutoffs caused by the first move searched in a node
+    private long forcedNodes;       //nodes decided by threats or left with a single block
+    private long extensions;        //forced moves searched without using up depth
+    private long tableProbes;
+    private long tableHits;
+    private int maxPly;             //deepest ply below the root that was reached
+    private int pieces;             //pieces in the root position
+    private long time;              //nanoseconds of the whole search
+    private final List<long[]> iterations = new ArrayList<long[]>();   //{depth, nanoseconds, nodes} per completed iteration
+
+    /**
+     * Creates new statistics from the counters of a search
+     * @param nodes : visited nodes
+     * @param leaves : rated leaves
+     * @param interiorNodes : expanded nodes
+     * @param betaCutoffs : beta cutoffs
+     * @param firstMoveCutoffs : beta cutoffs by the first searched move
+     * @param forcedNodes : nodes decided by threats or left with a single block
+     * @param extensions : forced moves searched without using up depth
+     * @param tableProbes : TranspositionTable lookups
+     * @param tableHits : TranspositionTable lookups that found an entry
+     * @param maxPly : deepest ply reached
+     * @param pieces : pieces in the root position
+     * @param time : duration of the search in nanoseconds
+     */
+    public SearchStats(long nodes, long leaves, long interiorNodes, long betaCutoffs, long firstMoveCutoffs,
+                       long forcedNodes, long extensions, long tableProbes, long tableHits, int maxPly, int pieces,
+                       long time) {
+        this.nodes = nodes;
+        this.leaves = leaves;
+        this.interiorNodes = interiorNodes;
+        this.betaCutoffs = betaCutoffs;
+        this.firstMoveCutoffs = firstMoveCutoffs;
+        this.forcedNodes = forcedNodes;
+        this.extensions = extensions;
+        this.tableProbes = tableProbes;
+        this.tableHits = tableHits;
+        this.maxPly = maxPly;
+        this.pieces = pieces;
+        this.time = time;
+    }
+
+    /**
+     * Creates a copy of other statistics, including their iterations
+     * @param other : The statistics to copy
+     */
+    public SearchStats(SearchStats other) {
+        this(other.nodes, other.leaves, other.interiorNodes, other.betaCutoffs, other.firstMoveCutoffs, other.forcedNodes,
+                other.extensions, other.tableProbes, other.tableHits, other.maxPly, other.pieces, other.time);
+        iterations.addAll(other.iterations);
+    }
+
+    /**
+     * Records a completed iteration of an iterative deepening search
+     * @param depth : The depth of the iteration
+     * @param time : The duration of the iteration in nanoseconds
+     * @param nodes : The nodes visited in the iteration
+     */
+    public void addIteration(int depth, long time, long nodes) {
+        iterations.add(new long[] {depth, time, nodes});
+    }
+
+    /**
+     * Adds the counters of another thread of the same search, the iterations of this one are kept
+     * @param other : The statistics of the other thread
+     */
+    public void add(SearchStats other) {
+        nodes += other.nodes;
+        leaves += other.leaves;
+        interiorNodes += other.interiorNodes;
+        betaCutoffs += other.betaCutoffs;
+        firstMoveCutoffs += other.firstMoveCutoffs;
+        forcedNodes += other.forcedNodes;
+        extensions += other.extensions;
+        tableProbes += other.tableProbes;
+        tableHits += other.tableHits;
+        maxPly = Math.max(maxPly, other.maxPly);
+    }
+
+    /**
+     * Gets the number of visited nodes
+     * @return : the node count, of all threads if added up
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Gets the number of nodes rated by the evaluation, full cubes and won positions
+     * @return : the leaf count
+     */
+    public long getLeaves() {
+        return leaves;
+    }
+
+    /**
+     * Gets the number of nodes left early because a move reached beta
+     * @return : the cutoff count
+     */
+    public long getBetaCutoffs() {
+        return betaCutoffs;
+    }
+
+    /**
+     * Gets the number of cutoffs caused by the first move searched in a node
+     * @return : the cutoff count
+     */
+    public long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    /**
+     * Gets the share of the cutoffs that were caused by the first move searched, a measure of the move ordering
+     * @return : the share between 0 and 1, 0 if there was no cutoff
+     */
+    public double getFirstMoveCutoffRate() {
+        return betaCutoffs == 0 ? 0 : (double) firstMoveCutoffs / betaCutoffs;
+    }
+
+    /**
+     * Gets the number of nodes decided by threats or left with a single block
+     * @return : the forced node count, 0 for a fixed depth search
+     */
+    public long getForcedNodes() {
+        return forcedNodes;
+    }
+
+    /**
+     * Gets the number of forced moves searched without using up depth
+     * @return : the extension count, 0 for a fixed depth search
+     */
+    public long getExtensions() {
+        return extensions;
+    }
+
+    /**
+     * Gets the number of TranspositionTable lookups
+     * @return : the probe count
+     */
+    public long getTableProbes() {
+        return tableProbes;
+    }
+
+    /**
+     * Gets the number of TranspositionTable lookups that found an entry
+     * @return : the hit count
+     */
+    public long getTableHits() {
+        return tableHits;
+    }
+
+    /**
+     * Gets the deepest ply below the root that was reached
+     * @return : the ply, over all threads if added up
+     */
+    public int getMaxPly() {
+        return maxPly;
+    }
+
+    /**
+     * Gets the average number of children searched per expanded node
+     * @return : the branching factor, 0 if no node was expanded
+     */
+    public double getBranchingFactor() {
+        return interiorNodes == 0 ? 0 : (double) (nodes - 1) / interiorNodes;
+    }
+
+    /**
+     * Formats the statistics as a single line of JSON
+     * @return : the JSON object
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+
+        json.append("\"pieces\":").append(pieces);
+        json.append(",\"timeMs\":").append(time / 1000000);
+        json.append(",\"nodes\":").append(nodes);
+        json.append(",\"leaves\":").append(leaves);
+        json.append(",\"betaCutoffs\":").append(betaCutoffs);
+        json.append(",\"forcedNodes\":").append(forcedNodes);
+        json.append(",\"extensions\":").append(extensions);
+        json.append(",\"firstMoveCutoffRate\":").append(String.format(java.util.Locale.ROOT, "%.3f", getFirstMoveCutoffRate()));
+        json.append(",\"tableProbes\":").append(tableProbes);
+        json.append(",\"tableHits\":").append(tableHits);
+        json.append(",\"maxPly\":").append(maxPly);
+        json.append(",\"branchingFactor\":").append(String.format(java.util.Locale.ROOT, "%.2f", getBranchingFactor()));
+        json.append(",\"iterations\":[");
+        for(int i = 0; i < iterations.size(); i++) {
+            long[] iteration = iterations.get(i);
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"depth\":").append(iteration[0])
+                    .append(",\"timeMs\":").append(iteration[1] / 1000000)
+                    .append(",\"nodes\":").append(iteration[2]).append('}');
+        }
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,83 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+
+/**
+ * Measures how the ParallelSearch scales with the number of threads.
+ * Every position of BenchmarkPositions is searched with the same time budget and a freshly cleared table,
+ * for 1 up to N threads, and nodes per second, speedup and reached depth are reported per thread count.
+ */
+public class SpeedupBenchmark {
+    /**
+     * Main-function of the benchmark
+     * @param args : options: --threads=N  highest thread count to measure, defaults to the number of processors
+     *                        --time=MS    time budget per position, defaults to 2000
+     *                        --hash=MB    size of the transposition table, defaults to TranspositionTable.DEFAULT_SIZE_MB
+     */
+    public static void main(String[] args) {
+        Options options = new Options(args);
+        int maxThreads = options.getInt("threads", Runtime.getRuntime().availableProcessors());
+        int timeBudget = options.getInt("time", 2000);
+        TranspositionTable table = new TranspositionTable(options.getInt("hash", TranspositionTable.DEFAULT_SIZE_MB));
+
+        //warm up the JIT, so the single-threaded baseline is not measured in the interpreter
+        run(1, timeBudget, table);
+
+        System.out.println("threads  nodes/sec     speedup  avg depth");
+
+        double baseline = 0;
+        for(int threads = 1; threads <= maxThreads; threads++) {
+            long[] totals = run(threads, timeBudget, table);
+            long nodes = totals[0];
+            long time = totals[1];
+            long depth = totals[2];
+
+            double nps = nodes * 1e9 / time;
+            if(threads == 1) {
+                baseline = nps;
+            }
+            System.out.printf("%7d  %12.0f  %6.2fx  %9.2f%n", threads, nps, nps / baseline, (double) depth / positionCount());
+        }
+    }
+
+    /**
+     * Searches all positions with a given number of threads
+     * @param threads : The number of threads
+     * @param timeBudget : The time budget per position in milliseconds
+     * @param table : The table to use, it is cleared before every position
+     * @return : The total nodes, the total time in nanoseconds and the sum of the reached depths
+     */
+    private static long[] run(int threads, int timeBudget, TranspositionTable table) {
+        ParallelSearch search = new ParallelSearch(threads, table);
+        long[] totals = new long[3];
+
+        for(String[][] positions : BenchmarkPositions.ALL) {
+            for(String[] position : positions) {
+                GameCube cube = BenchmarkPositions.cube(position);
+                PIECE player = BenchmarkPositions.player(position);
+
+                table.clear();
+                long start = System.nanoTime();
+                SearchResult result = search.iterativeDeepening(cube, player, timeBudget);
+                totals[1] += System.nanoTime() - start;
+                totals[0] += result.getNodes();
+                totals[2] += result.getDepth();
+            }
+        }
+        search.shutdown();
+
+        return totals;
+    }
+
+    /**
+     * Counts the benchmark positions
+     * @return : the number of positions searched per thread count
+     */
+    private static int positionCount() {
+        int count = 0;
+        for(String[][] positions : BenchmarkPositions.ALL) {
+            count += positions.length;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,70 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+
+/**
+ * Table-driven version of Main.rateGameCube that works on the bitboards of the cube.
+ * The score of a line only depends on how many own and enemy pieces it holds, so both counts are taken with a
+ * population count and the score is read from a lookup table. All 76 lines are scored in one loop without branching
+ * on single cells. The lines are checked in the order of Main.rateGameCube, so when both players have completed a line
+ * the first one decides the result just like there.
+ */
+public class TableEvaluation {
+    /**
+     * Score of a line by (own pieces << 3 | enemy pieces), as calculated by Main.checkObstruction
+     */
+    private static final int[] LINE_SCORES = createLineScores();
+
+    /**
+     * Rates a cube from the view of a player, the result is the same as the one of Main.rateGameCube
+     * @param cube : The GameCube to rate
+     * @param player : The piece that the player is using
+     * @return : MINUS_INFINITY if the player has lost, PLUS_INFINITY if the player has won, or score in between
+     */
+    public static int rate(GameCube cube, PIECE player) {
+        return rate(cube.getBitboard(player), cube.getBitboard(Search.opponent(player)));
+    }
+
+    /**
+     * Rates a position given as bitboards
+     * @param own : The cells of the player to rate for
+     * @param enemy : The cells of the other player
+     * @return : MINUS_INFINITY if the player has lost, PLUS_INFINITY if the player has won, or score in between
+     */
+    public static int rate(long own, long enemy) {
+        long[] lines = GameCube.LINES;
+        int score = 0;
+
+        for(int line = 0; line < lines.length; line++) {
+            int lineScore = LINE_SCORES[(Long.bitCount(own & lines[line]) << 3) | Long.bitCount(enemy & lines[line])];
+
+            //only a completed line scores an infinity
+            if(lineScore >= Main.PLUS_INFINITY || lineScore <= Main.MINUS_INFINITY) {
+                return lineScore;
+            }
+            score += lineScore;
+        }
+        return score;
+    }
+
+    /**
+     * Creates the table of line scores
+     * @return : the score for every combination of 0 to 4 own and 0 to 4 enemy pieces
+     */
+    private static int[] createLineScores() {
+        int[] scores = new int[40];
+
+        for(int own = 0; own <= 4; own++) {
+            for(int enemy = 0; enemy + own <= 4; enemy++) {
+                int score;
+                if(own == 4)        score = Main.PLUS_INFINITY;
+                else if(enemy == 4) score = Main.MINUS_INFINITY;
+                else if(enemy == 0) score = own + 1;
+                else                score = 0;
+
+                scores[(own << 3) | enemy] = score;
+            }
+        }
+        return scores;
+    }
+}
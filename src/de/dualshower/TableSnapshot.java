@@ -0,0 +1,122 @@
+package de.dualshower;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the results of a TranspositionTable across process restarts.
+ * At startup the snapshot file is loaded on a background thread, so the first search does not wait for it and simply
+ * finds more and more entries while it runs. The table is saved again periodically and when the process ends.
+ * Problems with the file are reported on stderr, the engine keeps working with whatever the table holds.
+ */
+public class TableSnapshot {
+    /**
+     * Identifies the hash keys of this version, a snapshot made with other keys is not loaded
+     */
+    public static final long FINGERPRINT = Search.positionKey(GameCube.fromBitboards(1L, 2L), Main.PIECE.PLAYER_2);
+
+    private final TranspositionTable table;
+    private final String path;
+    private Thread loader;
+    private ScheduledExecutorService saver;
+
+    /**
+     * Creates a snapshot for a table
+     * @param table : The table to load into and save
+     * @param path : The path of the snapshot file
+     */
+    public TableSnapshot(TranspositionTable table, String path) {
+        this.table = table;
+        this.path = path;
+    }
+
+    /**
+     * Starts loading the snapshot file in the background, nothing happens if it does not exist yet
+     */
+    public synchronized void startLoading() {
+        if(loader != null || !new File(path).exists()) {
+            return;
+        }
+
+        loader = new Thread(() -> {
+            try {
+                table.load(path, FINGERPRINT);
+            }
+            catch(IOException e) {
+                System.err.println("Table snapshot not loaded: " + e.getMessage());
+            }
+        }, "snapshot-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Waits until a background load has finished
+     */
+    public void awaitLoaded() {
+        Thread running;
+        synchronized(this) {
+            running = loader;
+        }
+        if(running == null) {
+            return;
+        }
+
+        try {
+            running.join();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Saves the table. A background load is finished first, so no entry of the old snapshot is lost.
+     * @return : the number of saved entries, -1 if saving failed
+     */
+    public synchronized long save() {
+        awaitLoaded();
+
+        try {
+            return table.save(path, FINGERPRINT);
+        }
+        catch(IOException e) {
+            System.err.println("Table snapshot not saved: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Saves the table at a fixed interval on a background thread, while searches may be running
+     * @param seconds : The interval in seconds
+     */
+    public synchronized void savePeriodically(long seconds) {
+        if(saver != null) {
+            return;
+        }
+
+        saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-saver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        saver.scheduleWithFixedDelay(this::save, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Saves the table when the process ends normally or is terminated by a signal
+     */
+    public void saveOnShutdown() {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            synchronized(this) {
+                if(saver != null) {
+                    saver.shutdownNow();
+                }
+            }
+            save();
+        }, "snapshot-shutdown"));
+    }
+}
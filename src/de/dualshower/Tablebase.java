@@ -0,0 +1,222 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.function.LongToIntFunction;
+
+/**
+ * Read access to an endgame tablebase written by TablebaseGenerator.
+ * Every stored position is solved exactly: win, draw or loss for the player at turn under perfect play, together with
+ * the number of plies until the game ends. The file is memory-mapped and searched in place.
+ *
+ * File layout (big endian):
+ *   header : int MAGIC, int VERSION, int number of entries, int maximum number of empty cells
+ *   entry  : long position key, byte value
+ * Entries are sorted by key. Keys are Search.positionKey, so symmetric positions share one entry.
+ * A value packs the result in its upper 2 bits and the distance in its lower 6 bits.
+ */
+public class Tablebase {
+    public static final int MAGIC = 0x4B425442;    //"KBTB"
+    public static final int VERSION = 2;     //2: canonical form chosen by the smallest bitboards
+    public static final int HEADER_BYTES = 16;
+    public static final int ENTRY_BYTES = 9;
+
+    //results from the view of the player at turn
+    public static final int DRAW = 0;
+    public static final int WIN  = 1;
+    public static final int LOSS = 2;
+
+    private final MappedByteBuffer buffer;
+    private final int entries;
+    private final int maxEmpty;
+
+    /**
+     * Opens and maps a tablebase file
+     * @param path : The path of the tablebase file
+     * @throws IOException : If the file cannot be read or is not a tablebase of this version
+     */
+    public Tablebase(String path) throws IOException {
+        try(RandomAccessFile file = new RandomAccessFile(path, "r"); FileChannel channel = file.getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if(buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a tablebase of version " + VERSION + ": " + path);
+        }
+
+        entries = buffer.getInt(8);
+        maxEmpty = buffer.getInt(12);
+        if(buffer.limit() < HEADER_BYTES + (long) entries * ENTRY_BYTES) {
+            throw new IOException("Tablebase is truncated: " + path);
+        }
+    }
+
+    /**
+     * Looks up the value of a position
+     * @param key : The Search.positionKey of the position
+     * @return : The stored value, -1 if the position is not in the tablebase
+     */
+    public int probe(long key) {
+        int low = 0;
+        int high = entries - 1;
+
+        //binary search over the sorted keys
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            long offset = HEADER_BYTES + (long) middle * ENTRY_BYTES;
+            long middleKey = buffer.getLong((int) offset);
+
+            if(middleKey < key) {
+                low = middle + 1;
+            }
+            else if(middleKey > key) {
+                high = middle - 1;
+            }
+            else {
+                return buffer.get((int) offset + 8) & 0xFF;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the perfect move of a position
+     * @param cube : The position
+     * @param player : The player at turn
+     * @return : The move, PLUS_INFINITY / 0 / MINUS_INFINITY for a win / draw / loss and the distance to the end of
+     *           the game as depth, null if the position is not in the tablebase
+     */
+    public SearchResult probe(GameCube cube, PIECE player) {
+        if(64 - cube.getPieceCount() > maxEmpty || probe(Search.positionKey(cube, player)) < 0) {
+            return null;
+        }
+
+        int solution = solve(cube.clone(), player, this::probe);
+        if(solution < 0) {
+            return null;
+        }
+
+        int score = result(solution) == WIN ? Main.PLUS_INFINITY : result(solution) == LOSS ? Main.MINUS_INFINITY : 0;
+        return new SearchResult(move(solution), score, distance(solution), 0);
+    }
+
+    /**
+     * Gets the number of positions in the tablebase
+     * @return : the number of entries
+     */
+    public int size() {
+        return entries;
+    }
+
+    /**
+     * Gets the largest number of empty cells of the stored positions
+     * @return : the K the tablebase was generated for
+     */
+    public int getMaxEmpty() {
+        return maxEmpty;
+    }
+
+    /**
+     * Solves a position from the values of its children
+     * @param cube : The position, must have a legal move, unchanged after the call
+     * @param toMove : The player at turn
+     * @param lookup : Gets the value of a child position by its Search.positionKey, -1 if it is unknown
+     * @return : The value of the position combined with its best move, see move(), -1 if a child is unknown
+     */
+    public static int solve(GameCube cube, PIECE toMove, LongToIntFunction lookup) {
+        PIECE next = Search.opponent(toMove);
+        int best = -1;
+        int bestMove = -1;
+
+        for(int moves = cube.getLegalMoves(); moves != 0; moves &= moves - 1) {
+            int pillar = Integer.numberOfTrailingZeros(moves);
+            int cell = cube.makeMove(pillar, toMove);
+            int value;
+
+            if(cube.hasWonThrough(toMove, cell)) {
+                value = value(WIN, 1);
+            }
+            else if(cube.getLegalMoves() == 0) {
+                value = value(DRAW, 1);
+            }
+            else {
+                int child = lookup.applyAsInt(Search.positionKey(cube, next));
+                value = child < 0 ? -1 : parent(child);
+            }
+            cube.undoMove(pillar);
+
+            if(value < 0) {
+                return -1;
+            }
+            if(best < 0 || rank(value) > rank(best)) {
+                best = value;
+                bestMove = pillar;
+            }
+        }
+        return best | (bestMove << 8);
+    }
+
+    /**
+     * Packs a result and a distance into a value
+     * @param result : WIN, DRAW or LOSS
+     * @param distance : The plies until the end of the game, at most 63
+     * @return : the value
+     */
+    public static int value(int result, int distance) {
+        return (result << 6) | distance;
+    }
+
+    /**
+     * Gets the result of a value
+     * @param value : a value as stored or returned by solve
+     * @return : WIN, DRAW or LOSS
+     */
+    public static int result(int value) {
+        return (value >>> 6) & 0x3;
+    }
+
+    /**
+     * Gets the distance of a value
+     * @param value : a value as stored or returned by solve
+     * @return : the plies until the end of the game
+     */
+    public static int distance(int value) {
+        return value & 0x3F;
+    }
+
+    /**
+     * Gets the best move of a value returned by solve
+     * @param value : a value returned by solve
+     * @return : the pillar index of the best move
+     */
+    public static int move(int value) {
+        return value >>> 8;
+    }
+
+    /**
+     * Calculates the value of a position from the value of the child reached by one of its moves
+     * @param child : The value of the child, from the view of the opponent
+     * @return : the value of the move from the view of the player making it
+     */
+    private static int parent(int child) {
+        int result = result(child) == WIN ? LOSS : result(child) == LOSS ? WIN : DRAW;
+        return value(result, distance(child) + 1);
+    }
+
+    /**
+     * Orders values by preference: fast wins before slow wins before draws before slow losses before fast losses
+     * @param value : The value
+     * @return : A number that is greater for the better value
+     */
+    private static int rank(int value) {
+        switch(result(value)) {
+            case WIN  : return 128 - distance(value);
+            case LOSS : return -128 + distance(value);
+            default   : return 0;
+        }
+    }
+}
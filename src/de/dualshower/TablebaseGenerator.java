@@ -0,0 +1,487 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates an endgame tablebase: every position that can be reached from a set of seed positions with at most K empty
+ * cells is solved exactly and written in the format read by Tablebase.
+ * All positions with K empty cells would be far too many, so the seeds decide which part of the endgame is covered.
+ * They are the ends of random games and optionally positions read from a file.
+ *
+ * The work is partitioned by piece count. A forward pass expands the seeds level by level and writes every level to a
+ * temporary file. A backward pass then solves the levels from the fullest one down, so only one level and the values
+ * of the level after it are in memory at a time. Finally the sorted levels are merged into the tablebase.
+ * Expanding and solving a level are split across threads.
+ */
+public class TablebaseGenerator {
+
+    /**
+     * Main-function of the generator
+     * @param args : args[0]: path of the tablebase file to write
+     *               options: --empty=K     maximum number of empty cells, defaults to 10
+     *                        --games=N     number of random games whose end positions are seeds, defaults to 100
+     *                        --seed=S      seed of the random games, defaults to 0
+     *                        --positions=FILE  additional seeds, one "<position> <player>" per line
+     *                        --threads=N   number of threads, defaults to the number of processors
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        Options options = new Options(args);
+        String path = options.getArgument(0);
+        int maxEmpty = options.getInt("empty", 10);
+        int threads = options.getInt("threads", Runtime.getRuntime().availableProcessors());
+
+        if(path == null) {
+            throw new IllegalArgumentException("Path of the tablebase file is missing");
+        }
+        if(maxEmpty < 1 || maxEmpty > 63) {
+            throw new IllegalArgumentException("Option --empty must be between 1 and 63");
+        }
+
+        List<GameCube> seeds = new ArrayList<GameCube>();
+        List<PIECE> players = new ArrayList<PIECE>();
+        randomSeeds(options.getInt("games", 100), options.getInt("seed", 0), maxEmpty, seeds, players);
+        if(options.has("positions")) {
+            readSeeds(options.get("positions", null), maxEmpty, seeds, players);
+        }
+        System.out.println(seeds.size() + " seed positions");
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            int first = 64 - maxEmpty;
+            File[] levels = new File[64];
+            File[] values = new File[64];
+
+            //forward: expand the seeds level by level
+            Level level = new Level(0);
+            for(int pieces = first; pieces < 64; pieces++) {
+                level = expand(level, seeds, players, pieces, pool, threads);
+                levels[pieces] = new File(path + ".level" + pieces);
+                level.write(levels[pieces]);
+                System.out.println("level " + pieces + ": " + level.size + " positions");
+            }
+
+            //backward: solve every level from the values of the next one
+            long[] childKeys = new long[0];
+            byte[] childValues = new byte[0];
+            for(int pieces = 63; pieces >= first; pieces--) {
+                level = Level.read(levels[pieces]);
+                levels[pieces].delete();
+
+                childValues = solve(level, childKeys, childValues, pool, threads);
+                childKeys = level.keys;
+                values[pieces] = new File(path + ".values" + pieces);
+                writeValues(values[pieces], childKeys, childValues);
+            }
+
+            long entries = merge(path, maxEmpty, Arrays.copyOfRange(values, first, 64));
+            System.out.println("Tablebase with " + entries + " positions written to " + path + " in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The positions of one piece count, sorted by key without duplicates
+     */
+    private static class Level {
+        long[] keys;
+        long[] player1;
+        long[] player2;
+        byte[] sides;   //ordinal of the player at turn
+        int size;
+
+        /**
+         * Creates a level with room for a number of positions
+         * @param capacity : The number of positions
+         */
+        Level(int capacity) {
+            keys = new long[capacity];
+            player1 = new long[capacity];
+            player2 = new long[capacity];
+            sides = new byte[capacity];
+        }
+
+        /**
+         * Appends a position, growing the arrays if needed
+         * @param cube : The position
+         * @param toMove : The player at turn
+         */
+        void add(GameCube cube, PIECE toMove) {
+            if(size == keys.length) {
+                int capacity = Math.max(16, 2 * size);
+                keys = Arrays.copyOf(keys, capacity);
+                player1 = Arrays.copyOf(player1, capacity);
+                player2 = Arrays.copyOf(player2, capacity);
+                sides = Arrays.copyOf(sides, capacity);
+            }
+
+            keys[size] = Search.positionKey(cube, toMove);
+            player1[size] = cube.getBitboard(PIECE.PLAYER_1);
+            player2[size] = cube.getBitboard(PIECE.PLAYER_2);
+            sides[size] = (byte) toMove.ordinal();
+            size++;
+        }
+
+        /**
+         * Appends all positions of another level
+         * @param other : The positions to append
+         */
+        void addAll(Level other) {
+            int capacity = size + other.size;
+            keys = Arrays.copyOf(keys, capacity);
+            player1 = Arrays.copyOf(player1, capacity);
+            player2 = Arrays.copyOf(player2, capacity);
+            sides = Arrays.copyOf(sides, capacity);
+
+            System.arraycopy(other.keys, 0, keys, size, other.size);
+            System.arraycopy(other.player1, 0, player1, size, other.size);
+            System.arraycopy(other.player2, 0, player2, size, other.size);
+            System.arraycopy(other.sides, 0, sides, size, other.size);
+            size = capacity;
+        }
+
+        /**
+         * Sorts the positions by key and removes symmetric duplicates
+         * @return : a new level with exactly fitting arrays
+         */
+        Level sorted() {
+            long[] unique = Arrays.copyOf(keys, size);
+            Arrays.parallelSort(unique);
+
+            int count = 0;
+            for(int i = 0; i < unique.length; i++) {
+                if(i == 0 || unique[i] != unique[i - 1]) {
+                    unique[count++] = unique[i];
+                }
+            }
+
+            //positions with the same key are symmetric, any of them represents the others
+            Level result = new Level(count);
+            result.keys = Arrays.copyOf(unique, count);
+            result.size = count;
+            for(int i = 0; i < size; i++) {
+                int index = Arrays.binarySearch(result.keys, keys[i]);
+                result.player1[index] = player1[i];
+                result.player2[index] = player2[i];
+                result.sides[index] = sides[i];
+            }
+            return result;
+        }
+
+        /**
+         * Creates the GameCube of a position
+         * @param index : The index of the position
+         * @return : a new GameCube
+         */
+        GameCube cube(int index) {
+            return GameCube.fromBitboards(player1[index], player2[index]);
+        }
+
+        /**
+         * Gets the player at turn of a position
+         * @param index : The index of the position
+         * @return : the player at turn
+         */
+        PIECE side(int index) {
+            return PIECE.values()[sides[index]];
+        }
+
+        /**
+         * Writes the level to a temporary file
+         * @param file : The file
+         * @throws IOException : If the file cannot be written
+         */
+        void write(File file) throws IOException {
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                out.writeInt(size);
+                for(int i = 0; i < size; i++) {
+                    out.writeLong(keys[i]);
+                    out.writeLong(player1[i]);
+                    out.writeLong(player2[i]);
+                    out.writeByte(sides[i]);
+                }
+            }
+        }
+
+        /**
+         * Reads a level written by write
+         * @param file : The file
+         * @return : the level
+         * @throws IOException : If the file cannot be read
+         */
+        static Level read(File file) throws IOException {
+            try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                Level level = new Level(in.readInt());
+                for(level.size = 0; level.size < level.keys.length; level.size++) {
+                    level.keys[level.size] = in.readLong();
+                    level.player1[level.size] = in.readLong();
+                    level.player2[level.size] = in.readLong();
+                    level.sides[level.size] = in.readByte();
+                }
+                return level;
+            }
+        }
+    }
+
+    /**
+     * Builds the next level from the children of the previous one and the seeds of its piece count.
+     * Children in which the game is over are not stored, their value is known without looking them up.
+     * @param previous : The level with one piece less
+     * @param seeds : All seed positions
+     * @param players : The player at turn of every seed
+     * @param pieces : The piece count of the new level
+     * @param pool : The threads to expand on
+     * @param threads : The number of threads
+     * @return : the new level, sorted
+     */
+    private static Level expand(Level previous, List<GameCube> seeds, List<PIECE> players, int pieces,
+                                ExecutorService pool, int threads) throws InterruptedException, ExecutionException {
+        List<Future<Level>> parts = new ArrayList<Future<Level>>();
+
+        for(int part = 0; part < threads; part++) {
+            final int from = (int) ((long) previous.size * part / threads);
+            final int to = (int) ((long) previous.size * (part + 1) / threads);
+
+            parts.add(pool.submit(() -> {
+                Level children = new Level(16 * (to - from));
+                for(int i = from; i < to; i++) {
+                    GameCube cube = previous.cube(i);
+                    PIECE toMove = previous.side(i);
+
+                    for(int moves = cube.getLegalMoves(); moves != 0; moves &= moves - 1) {
+                        int pillar = Integer.numberOfTrailingZeros(moves);
+                        int cell = cube.makeMove(pillar, toMove);
+                        if(!cube.hasWonThrough(toMove, cell) && cube.getLegalMoves() != 0) {
+                            children.add(cube, Search.opponent(toMove));
+                        }
+                        cube.undoMove(pillar);
+                    }
+                }
+                return children;
+            }));
+        }
+
+        Level level = new Level(0);
+        for(Future<Level> part : parts) {
+            level.addAll(part.get());
+        }
+        for(int i = 0; i < seeds.size(); i++) {
+            if(seeds.get(i).getPieceCount() == pieces) {
+                level.add(seeds.get(i), players.get(i));
+            }
+        }
+        return level.sorted();
+    }
+
+    /**
+     * Solves all positions of a level
+     * @param level : The positions
+     * @param childKeys : The sorted keys of the level with one piece more
+     * @param childValues : The values of the level with one piece more
+     * @param pool : The threads to solve on
+     * @param threads : The number of threads
+     * @return : the values of the positions, in the order of the level
+     */
+    private static byte[] solve(Level level, long[] childKeys, byte[] childValues, ExecutorService pool, int threads)
+            throws InterruptedException, ExecutionException {
+        byte[] values = new byte[level.size];
+        List<Future<?>> parts = new ArrayList<Future<?>>();
+
+        for(int part = 0; part < threads; part++) {
+            final int from = (int) ((long) level.size * part / threads);
+            final int to = (int) ((long) level.size * (part + 1) / threads);
+
+            parts.add(pool.submit(() -> {
+                for(int i = from; i < to; i++) {
+                    int solution = Tablebase.solve(level.cube(i), level.side(i), key -> {
+                        int index = Arrays.binarySearch(childKeys, key);
+                        return index < 0 ? -1 : childValues[index] & 0xFF;
+                    });
+                    if(solution < 0) {
+                        throw new IllegalStateException("Child of position " + level.keys[i] + " was not generated");
+                    }
+                    values[i] = (byte) solution;
+                }
+            }));
+        }
+
+        for(Future<?> part : parts) {
+            part.get();
+        }
+        return values;
+    }
+
+    /**
+     * Writes the solved positions of a level to a temporary file
+     * @param file : The file
+     * @param keys : The sorted keys
+     * @param values : The values
+     * @throws IOException : If the file cannot be written
+     */
+    private static void writeValues(File file, long[] keys, byte[] values) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            for(int i = 0; i < keys.length; i++) {
+                out.writeLong(keys[i]);
+                out.writeByte(values[i]);
+            }
+        }
+    }
+
+    /**
+     * Merges the sorted levels into the tablebase file and deletes them
+     * @param path : The path of the tablebase file
+     * @param maxEmpty : The maximum number of empty cells
+     * @param levels : The files written by writeValues
+     * @return : the number of entries
+     * @throws IOException : If a file cannot be read or written
+     */
+    private static long merge(String path, int maxEmpty, File[] levels) throws IOException {
+        long entries = 0;
+        for(File level : levels) {
+            entries += level.length() / Tablebase.ENTRY_BYTES;
+        }
+        if(Tablebase.HEADER_BYTES + entries * Tablebase.ENTRY_BYTES > Integer.MAX_VALUE) {
+            throw new IOException("Tablebase with " + entries + " positions does not fit into a mapped file");
+        }
+
+        DataInputStream[] inputs = new DataInputStream[levels.length];
+        long[] remaining = new long[levels.length];
+        long[] heads = new long[levels.length];
+
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(Tablebase.MAGIC);
+            out.writeInt(Tablebase.VERSION);
+            out.writeInt((int) entries);
+            out.writeInt(maxEmpty);
+
+            for(int i = 0; i < levels.length; i++) {
+                inputs[i] = new DataInputStream(new BufferedInputStream(new FileInputStream(levels[i])));
+                remaining[i] = levels[i].length() / Tablebase.ENTRY_BYTES;
+                if(remaining[i] > 0) {
+                    heads[i] = inputs[i].readLong();
+                }
+            }
+
+            //repeatedly take the smallest key among the heads of all levels
+            for(long written = 0; written < entries; written++) {
+                int smallest = -1;
+                for(int i = 0; i < levels.length; i++) {
+                    if(remaining[i] > 0 && (smallest < 0 || heads[i] < heads[smallest])) {
+                        smallest = i;
+                    }
+                }
+
+                out.writeLong(heads[smallest]);
+                out.writeByte(inputs[smallest].readByte());
+                if(--remaining[smallest] > 0) {
+                    heads[smallest] = inputs[smallest].readLong();
+                }
+            }
+        }
+        finally {
+            for(int i = 0; i < levels.length; i++) {
+                if(inputs[i] != null) {
+                    inputs[i].close();
+                }
+                levels[i].delete();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Plays random games until they have the given number of empty cells. Moves that complete a line are avoided, so the
+     * games reach the endgame, games in which a player is forced to complete a line are discarded.
+     * @param games : The number of games
+     * @param seed : The seed of the random moves
+     * @param empty : The number of empty cells at the end of a game
+     * @param seeds : Receives the end positions
+     * @param players : Receives the player at turn of every end position
+     */
+    private static void randomSeeds(int games, long seed, int empty, List<GameCube> seeds, List<PIECE> players) {
+        Random random = new Random(seed);
+
+        for(int game = 0; game < games; game++) {
+            GameCube cube = new GameCube();
+            PIECE toMove = PIECE.PLAYER_1;
+
+            while(cube.getPieceCount() < 64 - empty && !cube.isWon()) {
+                int moves = 0;
+                for(int legal = cube.getLegalMoves(); legal != 0; legal &= legal - 1) {
+                    int pillar = Integer.numberOfTrailingZeros(legal);
+                    int cell = cube.makeMove(pillar, toMove);
+                    if(!cube.hasWonThrough(toMove, cell)) {
+                        moves |= 1 << pillar;
+                    }
+                    cube.undoMove(pillar);
+                }
+                if(moves == 0) {
+                    break;
+                }
+
+                for(int skip = random.nextInt(Integer.bitCount(moves)); skip > 0; skip--) {
+                    moves &= moves - 1;
+                }
+                cube.makeMove(Integer.numberOfTrailingZeros(moves), toMove);
+                toMove = Search.opponent(toMove);
+            }
+
+            if(cube.getPieceCount() == 64 - empty) {
+                seeds.add(cube);
+                players.add(toMove);
+            }
+        }
+    }
+
+    /**
+     * Reads seed positions from a file, positions with too many empty cells or a completed line are skipped
+     * @param path : The file with one "<position> <player>" per line
+     * @param maxEmpty : The maximum number of empty cells
+     * @param seeds : Receives the positions
+     * @param players : Receives the player at turn of every position
+     * @throws IOException : If the file cannot be read
+     */
+    private static void readSeeds(String path, int maxEmpty, List<GameCube> seeds, List<PIECE> players) throws IOException {
+        try(BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+                if(fields.length < 2) {
+                    continue;
+                }
+
+                GameCube cube = new GameCube();
+                Main.inititializeCube(cube, fields[0]);
+                if(64 - cube.getPieceCount() > maxEmpty || cube.isWon()) {
+                    System.out.println("skipping seed " + fields[0]);
+                    continue;
+                }
+
+                seeds.add(cube);
+                players.add(Main.parsePlayer(fields[1]));
+            }
+        }
+    }
+}
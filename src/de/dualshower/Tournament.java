@@ -0,0 +1,345 @@
+package de.dualshower;
+
+import de.dualshower.Main.PIECE;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Self-play tournament between two engine configurations A and B, used to check that a change does not cost strength.
+ * The openings are all canonical positions after a few plies. Each is played twice, A starting once and B starting
+ * once, so neither engine profits from a lucky opening. After an odd number of plies PLAYER_2 is at turn in the
+ * opening. Games run in parallel, each thread keeps one Search per engine.
+ *
+ * The result is reported as wins, draws and losses of A, an Elo difference with a 95% error bar and the log-likelihood
+ * ratio of a sequential probability ratio test (SPRT) of H0: elo = elo0 against H1: elo = elo1. The tournament stops
+ * early once the ratio leaves the bounds given by alpha and beta, so a clear result does not need all games.
+ * Every game is written to a CSV file.
+ *
+ * Engine configurations are comma separated key=value lists:
+ *   time=MS   time budget per move, defaults to 100
+ *   depth=N   search every move to a fixed depth instead of using a time budget
+ *   hash=MB   size of the transposition table, defaults to 4
+ *   tree      use Main.buildTree + Main.calculateScore to depth 3 instead of the Search
+ *   mcts      use a single-threaded MctsSearch with the time budget instead of the Search, hash is its tree memory
+ *   playouts=N  playout limit per move of the MctsSearch
+ */
+public class Tournament {
+
+    /**
+     * Main-function of the tournament
+     * @param args : options: --a=CONFIG     configuration of engine A, defaults to time=100
+     *                        --b=CONFIG     configuration of engine B, defaults to time=100
+     *                        --games=N      maximum number of games, defaults to 1000
+     *                        --plies=N      plies of the openings, defaults to 2
+     *                        --threads=N    number of parallel games, defaults to the number of processors
+     *                        --elo0=E       Elo difference of H0, defaults to -10
+     *                        --elo1=E       Elo difference of H1, defaults to 0
+     *                        --alpha=P      probability of a false positive in percent, defaults to 5
+     *                        --beta=P       probability of a false negative in percent, defaults to 5
+     *                        --csv=FILE     per-game statistics, defaults to tournament.csv
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        Options options = new Options(args);
+        Engine a = new Engine(options.get("a", "time=100"));
+        Engine b = new Engine(options.get("b", "time=100"));
+        int games = options.getInt("games", 1000);
+        int threads = options.getInt("threads", Runtime.getRuntime().availableProcessors());
+        double elo0 = options.getDouble("elo0", -10);
+        double elo1 = options.getDouble("elo1", 0);
+        double lower = Math.log(options.getInt("beta", 5) / (100.0 - options.getInt("alpha", 5)));
+        double upper = Math.log((100.0 - options.getInt("beta", 5)) / options.getInt("alpha", 5));
+
+        int plies = options.getInt("plies", 2);
+        if(plies < 0 || plies > 63) {
+            throw new IllegalArgumentException("Option --plies must be between 0 and 63");
+        }
+
+        List<GameCube> openings = new ArrayList<GameCube>();
+        collectOpenings(new GameCube(), PIECE.PLAYER_1, plies, new HashSet<Long>(), openings);
+        System.out.println("A: " + a + "  B: " + b + "  " + openings.size() + " openings, up to " + games + " games");
+
+        ThreadLocal<Search[]> searches = ThreadLocal.withInitial(() -> new Search[] {a.newSearch(), b.newSearch()});
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ExecutorCompletionService<Game> results = new ExecutorCompletionService<Game>(pool);
+
+        for(int i = 0; i < games; i++) {
+            final int number = i;
+            final GameCube opening = openings.get((i / 2) % openings.size());
+            //in even games A has the first move, in odd ones B
+            results.submit(() -> play(number, opening, number % 2 == 0, a, b, searches.get()));
+        }
+
+        int[] count = new int[3];   //wins, draws and losses of A
+        double llr = 0;
+
+        try(PrintWriter csv = new PrintWriter(new BufferedWriter(new FileWriter(options.get("csv", "tournament.csv"))))) {
+            csv.println("game,opening,a_first,result,plies,nodes_a,nodes_b,time_ms_a,time_ms_b");
+
+            for(int finished = 0; finished < games; finished++) {
+                Game game = results.take().get();
+                count[game.result]++;
+                csv.println(game.number + "," + (game.number / 2) % openings.size() + "," + game.aFirst + ","
+                        + new String[] {"win", "draw", "loss"}[game.result] + "," + game.plies + ","
+                        + game.nodes[0] + "," + game.nodes[1] + "," + game.time[0] / 1000000 + "," + game.time[1] / 1000000);
+
+                llr = logLikelihoodRatio(count, elo0, elo1);
+                if((finished + 1) % 10 == 0 || llr <= lower || llr >= upper) {
+                    System.out.println(report(count, llr, lower, upper));
+                }
+                if(llr <= lower || llr >= upper) {
+                    break;
+                }
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+
+        System.out.println(llr >= upper ? "H1 accepted: A is not weaker than elo0"
+                : llr <= lower ? "H0 accepted: A is weaker" : "SPRT inconclusive after " + (count[0] + count[1] + count[2]) + " games");
+    }
+
+    /**
+     * An engine configuration
+     */
+    static class Engine {
+        private final String config;
+        private long time = 100;
+        private int depth = 0;
+        private int hash = 4;
+        private boolean tree = false;
+        private boolean mcts = false;
+        private long playouts = 0;
+        private final ThreadLocal<MctsSearch> mctsSearches = ThreadLocal.withInitial(() -> new MctsSearch(hash, 1));
+
+        /**
+         * Parses a configuration
+         * @param config : comma separated key=value pairs, see the class comment
+         * @throws IllegalArgumentException : If a key is unknown
+         */
+        Engine(String config) {
+            this.config = config;
+
+            for(String option : config.split(",")) {
+                String[] pair = option.trim().split("=", 2);
+                switch(pair[0]) {
+                    case "time"  : time = Long.parseLong(pair[1]); break;
+                    case "depth" : depth = Integer.parseInt(pair[1]); break;
+                    case "hash"  : hash = Integer.parseInt(pair[1]); break;
+                    case "tree"  : tree = true; break;
+                    case "mcts"  : mcts = true; break;
+                    case "playouts" : playouts = Long.parseLong(pair[1]); break;
+                    case ""      : break;
+                    default      : throw new IllegalArgumentException("Unknown engine option: " + pair[0]);
+                }
+            }
+        }
+
+        /**
+         * Creates the Search of one thread
+         * @return : a new Search with its own table
+         */
+        Search newSearch() {
+            return new Search(new TranspositionTable(hash));
+        }
+
+        /**
+         * Chooses a move
+         * @param cube : The position, unchanged after the call
+         * @param toMove : The player at turn
+         * @param search : The Search of the current thread for this engine
+         * @return : the move and the visited nodes
+         */
+        SearchResult move(GameCube cube, PIECE toMove, Search search) {
+            if(tree) {
+                TreeNode root = new TreeNode(cube);
+                Main.buildTree(root, toMove, 0, Math.min(3, 64 - cube.getPieceCount()));
+                Main.calculateScore(root, toMove, true);
+                String move = Main.getBestMove(root);
+                return new SearchResult(move.isEmpty() ? -1 : GameSession.parseMove(move), 0, 3, 0);
+            }
+            if(mcts) {
+                return mctsSearches.get().search(cube, toMove, playouts > 0 ? Integer.MAX_VALUE : time, playouts);
+            }
+            if(depth > 0) {
+                return search.search(cube, toMove, Math.min(depth, 64 - cube.getPieceCount()));
+            }
+            return search.iterativeDeepening(cube, toMove, time);
+        }
+
+        @Override
+        public String toString() {
+            return config;
+        }
+    }
+
+    /**
+     * The outcome of one game
+     */
+    static class Game {
+        int number;
+        boolean aFirst;
+        int result;     //0 A won, 1 draw, 2 B won
+        int plies;
+        long[] nodes = new long[2];
+        long[] time = new long[2];  //nanoseconds spent by A and B
+    }
+
+    /**
+     * Plays one game
+     * @param number : The number of the game
+     * @param opening : The start position, the player at turn follows from its number of pieces
+     * @param aFirst : true if A makes the first move from the opening
+     * @param a : Engine A
+     * @param b : Engine B
+     * @param searches : The Search of each engine on the current thread
+     * @return : the outcome
+     */
+    private static Game play(int number, GameCube opening, boolean aFirst, Engine a, Engine b, Search[] searches) {
+        Game game = new Game();
+        game.number = number;
+        game.aFirst = aFirst;
+        game.result = 1;
+
+        GameCube cube = opening.clone();
+        PIECE first = (cube.getPieceCount() & 1) == 0 ? PIECE.PLAYER_1 : PIECE.PLAYER_2;
+        PIECE toMove = first;
+        Engine[] engines = {a, b};
+
+        //every game starts with empty tables, so the games are independent of each other
+        searches[0].getTable().clear();
+        searches[1].getTable().clear();
+
+        while(cube.getLegalMoves() != 0) {
+            int engine = (toMove == first) == aFirst ? 0 : 1;
+
+            long start = System.nanoTime();
+            SearchResult result = engines[engine].move(cube, toMove, searches[engine]);
+            game.time[engine] += System.nanoTime() - start;
+            game.nodes[engine] += result.getNodes();
+
+            int pillar = result.getMove();
+            if(pillar < 0 || !cube.canPlay(pillar)) {
+                //an engine without a legal move loses
+                game.result = engine == 0 ? 2 : 0;
+                break;
+            }
+
+            int cell = cube.makeMove(pillar, toMove);
+            game.plies++;
+            if(cube.hasWonThrough(toMove, cell)) {
+                game.result = engine == 0 ? 0 : 2;
+                break;
+            }
+            toMove = Search.opponent(toMove);
+        }
+        return game;
+    }
+
+    /**
+     * Collects every canonical position after a number of plies, positions in which a line is completed are skipped
+     * @param cube : The current position, unchanged after the call
+     * @param toMove : The player at turn
+     * @param plies : The number of plies left to play
+     * @param seen : The canonical hashes of the openings collected so far
+     * @param openings : Receives a copy of every new opening
+     */
+    private static void collectOpenings(GameCube cube, PIECE toMove, int plies, Set<Long> seen, List<GameCube> openings) {
+        if(cube.isWon()) {
+            return;
+        }
+        if(plies == 0) {
+            if(seen.add(cube.getCanonicalHash())) {
+                openings.add(cube.clone());
+            }
+            return;
+        }
+
+        for(int pillar = 0; pillar < 16; pillar++) {
+            if(cube.canPlay(pillar)) {
+                cube.makeMove(pillar, toMove);
+                collectOpenings(cube, Search.opponent(toMove), plies - 1, seen, openings);
+                cube.undoMove(pillar);
+            }
+        }
+    }
+
+    /**
+     * Calculates the log-likelihood ratio of H1 against H0 with the normal approximation of the trinomial distribution
+     * @param count : The wins, draws and losses of A
+     * @param elo0 : The Elo difference of H0
+     * @param elo1 : The Elo difference of H1
+     * @return : the log-likelihood ratio, 0 before the first game
+     */
+    static double logLikelihoodRatio(int[] count, double elo0, double elo1) {
+        double games = count[0] + count[1] + count[2];
+        if(games == 0) {
+            return 0;
+        }
+
+        double score = (count[0] + 0.5 * count[1]) / games;
+        double variance = (count[0] * Math.pow(1 - score, 2) + count[1] * Math.pow(0.5 - score, 2)
+                + count[2] * Math.pow(score, 2)) / games;
+        if(variance == 0) {
+            //only wins, only draws or only losses so far: a virtual win and loss give the sweep a finite variance
+            return logLikelihoodRatio(new int[] {count[0] + 1, count[1], count[2] + 1}, elo0, elo1);
+        }
+
+        double score0 = expectedScore(elo0);
+        double score1 = expectedScore(elo1);
+        return games * (score1 - score0) * (2 * score - score0 - score1) / (2 * variance);
+    }
+
+    /**
+     * Formats the current standing
+     * @param count : The wins, draws and losses of A
+     * @param llr : The log-likelihood ratio
+     * @param lower : The lower bound of the SPRT
+     * @param upper : The upper bound of the SPRT
+     * @return : a line with the results, the Elo difference and the SPRT state
+     */
+    static String report(int[] count, double llr, double lower, double upper) {
+        double games = count[0] + count[1] + count[2];
+        double score = (count[0] + 0.5 * count[1]) / games;
+        double variance = (count[0] * Math.pow(1 - score, 2) + count[1] * Math.pow(0.5 - score, 2)
+                + count[2] * Math.pow(score, 2)) / games;
+        double margin = 1.96 * Math.sqrt(variance / games);
+
+        //the margin of the score is converted with the slope of the Elo curve at the score
+        double elo = elo(score);
+        double error = margin * 400 / (Math.log(10) * score * (1 - score));
+
+        return String.format(Locale.ROOT, "games %d  W %d D %d L %d  elo %.1f +- %.1f  LLR %.2f [%.2f, %.2f]",
+                (int) games, count[0], count[1], count[2], elo, error, llr, lower, upper);
+    }
+
+    /**
+     * Converts an Elo difference into the expected score
+     * @param elo : The Elo difference
+     * @return : the expected score between 0 and 1
+     */
+    private static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /**
+     * Converts a score into an Elo difference
+     * @param score : The score between 0 and 1
+     * @return : the Elo difference, infinite for 0 and 1
+     */
+    private static double elo(double score) {
+        return -400 * Math.log10(1 / score - 1);
+    }
+}
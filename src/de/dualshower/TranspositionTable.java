@@ -0,0 +1,370 @@
+package de.dualshower;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Fixed-size hash table for search results, stored in primitive arrays.
+ * Every slot consists of a 64-bit key and a 32-bit data word that packs score, depth, bound type and best move.
+ * A data word of 0 marks an empty slot, so probe() returns 0 on a miss.
+ * The table is shared by all threads of a parallel search without locking: the key array holds key XOR data,
+ * so a slot that was torn by concurrent writes no longer matches its key and is treated as a miss.
+ * Every slot also remembers the generation it was last used in. A game bumps the generation before each search, so
+ * entries of lines that were not played are no longer protected by their depth and get replaced first, while entries
+ * that the new search probes are refreshed.
+ *
+ * The entries can be saved to a snapshot file and loaded again by a later process.
+ * Snapshot layout (big endian):
+ *   header : int SNAPSHOT_MAGIC, int SNAPSHOT_VERSION, long key fingerprint, long number of entries, long CRC-32 of
+ *            all entry bytes
+ *   entry  : long key, int data word
+ * The fingerprint identifies the hash keys the entries were made with, a snapshot with another fingerprint is rejected.
+ */
+public class TranspositionTable {
+    public static final int DEFAULT_SIZE_MB = 16;
+
+    //bound types
+    public static final int EXACT       = 0;
+    public static final int LOWER_BOUND = 1;   //score >= stored score (beta cutoff)
+    public static final int UPPER_BOUND = 2;   //score <= stored score (no move raised alpha)
+
+    /**
+     * Decides which slot is overwritten when a new result is stored
+     * ALWAYS_REPLACE  : one slot per bucket, the newest result always wins
+     * DEPTH_PREFERRED : one slot per bucket, a result is only replaced by one of at least the same depth
+     * TWO_TIER        : two slots per bucket, a depth-preferred one and an always-replace one
+     */
+    public enum Policy {ALWAYS_REPLACE, DEPTH_PREFERRED, TWO_TIER}
+
+    private static final int SLOT_BYTES = 13;   //8 byte key + 4 byte data + 1 byte generation
+
+    public static final int SNAPSHOT_MAGIC = 0x4B425454;    //"KBTT"
+    public static final int SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_HEADER_BYTES = 32;
+    private static final int SNAPSHOT_ENTRY_BYTES = 12;
+
+    //layout of the data word, from the lowest bit: 18 bit score, 6 bit depth, 2 bit bound, 5 bit move + 1
+    private static final int SCORE_BITS  = 18;
+    private static final int SCORE_BIAS  = 1 << (SCORE_BITS - 1);
+    private static final int DEPTH_SHIFT = SCORE_BITS;
+    private static final int BOUND_SHIFT = DEPTH_SHIFT + 6;
+    private static final int MOVE_SHIFT  = BOUND_SHIFT + 2;
+
+    private final long[] keys;
+    private final int[] data;
+    private final byte[] ages;      //generation in which each slot was stored or last probed, only a replacement hint
+    private final Policy policy;
+    private final int bucketMask;   //number of buckets - 1
+    private final int bucketShift;  //log2 of the slots per bucket
+    private volatile byte generation;   //only changed by newGeneration() and clear()
+
+    /**
+     * Creates a new, empty table
+     * @param sizeMb : The memory to use in MB, rounded down to a power of two number of slots
+     * @param policy : The replacement policy
+     */
+    public TranspositionTable(int sizeMb, Policy policy) {
+        long maxSlots = Math.max(2L, (long) sizeMb * 1024 * 1024 / SLOT_BYTES);
+        int slots = (int) Long.highestOneBit(Math.min(maxSlots, 1L << 30));
+
+        this.keys = new long[slots];
+        this.data = new int[slots];
+        this.ages = new byte[slots];
+        this.policy = policy;
+        this.bucketShift = policy == Policy.TWO_TIER ? 1 : 0;
+        this.bucketMask = (slots >> bucketShift) - 1;
+    }
+
+    /**
+     * Creates a new, empty table with the two-tier replacement policy
+     * @param sizeMb : The memory to use in MB
+     */
+    public TranspositionTable(int sizeMb) {
+        this(sizeMb, Policy.TWO_TIER);
+    }
+
+    /**
+     * Looks up the result stored for a position
+     * @param key : The hash key of the position
+     * @return : The packed data word, 0 if there is no entry for key
+     */
+    public int probe(long key) {
+        int index = index(key);
+
+        for(int i = index; i < index + (1 << bucketShift); i++) {
+            int entry = data[i];
+            if((keys[i] ^ entry) == key && entry != 0) {
+                ages[i] = generation;
+                return entry;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stores the result of a search according to the replacement policy
+     * @param key : The hash key of the position
+     * @param depth : The remaining depth the position was searched with
+     * @param bound : EXACT, LOWER_BOUND or UPPER_BOUND
+     * @param score : The score of the position
+     * @param move : The pillar index of the best move, -1 if unknown
+     */
+    public void store(long key, int depth, int bound, int score, int move) {
+        int index = index(key);
+        int entry = pack(depth, bound, score, move);
+
+        switch(policy) {
+            case ALWAYS_REPLACE:
+                break;
+            case DEPTH_PREFERRED:
+                if(isProtected(index, key, depth)) {
+                    return;
+                }
+                break;
+            case TWO_TIER:
+                //the deeper result stays in the first slot, everything else goes to the second one
+                if(isProtected(index, key, depth)) {
+                    index++;
+                }
+                break;
+        }
+
+        keys[index] = key ^ entry;
+        data[index] = entry;
+        ages[index] = generation;
+    }
+
+    /**
+     * Starts a new generation, all entries stored before are replaced like empty slots until they are probed again.
+     * Called before each search of a game, not by the threads of one search. Games that share the table, like the
+     * connections of an EngineServer, each bump the generation and so also age the entries of the other games. Those
+     * are only replaced earlier, an entry that is probed again is protected again.
+     */
+    public synchronized void newGeneration() {
+        generation++;
+    }
+
+    /**
+     * Checks if a slot holds a deeper result of another position from the current generation
+     * @param index : The slot index
+     * @param key : The hash key of the new result
+     * @param depth : The remaining depth of the new result
+     * @return : true if the slot must not be overwritten by the new result
+     */
+    private boolean isProtected(int index, long key, int depth) {
+        int stored = data[index];
+        return (keys[index] ^ stored) != key && stored != 0 && ages[index] == generation && depth(stored) > depth;
+    }
+
+    /**
+     * Removes all entries
+     */
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(data, 0);
+        Arrays.fill(ages, (byte) 0);
+        generation = 0;
+    }
+
+    /**
+     * Writes all entries to a snapshot file. The table may be used by searches at the same time, a slot torn by a
+     * concurrent write is saved as it is and never matches its key again.
+     * The snapshot is written to a temporary file first and then renamed, so an existing snapshot is only replaced by
+     * a complete one.
+     * @param path : The path of the snapshot file
+     * @param fingerprint : Identifies the hash keys, see load
+     * @return : the number of saved entries
+     * @throws IOException : If the file cannot be written
+     */
+    public long save(String path, long fingerprint) throws IOException {
+        String temporary = path + ".tmp";
+        CRC32 crc = new CRC32();
+        long entries = 0;
+
+        try(FileOutputStream file = new FileOutputStream(temporary)) {
+            file.write(new byte[SNAPSHOT_HEADER_BYTES]);
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(file, crc), 1 << 16));
+            for(int i = 0; i < data.length; i++) {
+                int entry = data[i];
+                if(entry != 0) {
+                    out.writeLong(keys[i] ^ entry);
+                    out.writeInt(entry);
+                    entries++;
+                }
+            }
+            out.flush();
+        }
+
+        try(RandomAccessFile file = new RandomAccessFile(temporary, "rw")) {
+            file.writeInt(SNAPSHOT_MAGIC);
+            file.writeInt(SNAPSHOT_VERSION);
+            file.writeLong(fingerprint);
+            file.writeLong(entries);
+            file.writeLong(crc.getValue());
+        }
+
+        Files.move(Paths.get(temporary), Paths.get(path), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return entries;
+    }
+
+    /**
+     * Adds the entries of a snapshot file. The file is memory-mapped and checked before the first entry is added.
+     * Entries only go to empty slots, so results of searches running at the same time are never replaced.
+     * The snapshot may come from a table of another size.
+     * @param path : The path of the snapshot file
+     * @param fingerprint : Must be the fingerprint the snapshot was saved with
+     * @return : the number of added entries
+     * @throws IOException : If the file cannot be read, is no snapshot of this version, was made with other hash keys
+     *                       or its checksum does not match
+     */
+    public long load(String path, long fingerprint) throws IOException {
+        try(RandomAccessFile file = new RandomAccessFile(path, "r"); FileChannel channel = file.getChannel()) {
+            if(channel.size() < SNAPSHOT_HEADER_BYTES) {
+                throw new IOException("Not a table snapshot: " + path);
+            }
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, SNAPSHOT_HEADER_BYTES);
+            if(header.getInt(0) != SNAPSHOT_MAGIC || header.getInt(4) != SNAPSHOT_VERSION) {
+                throw new IOException("Not a table snapshot of version " + SNAPSHOT_VERSION + ": " + path);
+            }
+            if(header.getLong(8) != fingerprint) {
+                throw new IOException("Table snapshot was made with other hash keys: " + path);
+            }
+
+            long entries = header.getLong(16);
+            if(entries < 0 || channel.size() != SNAPSHOT_HEADER_BYTES + entries * SNAPSHOT_ENTRY_BYTES) {
+                throw new IOException("Table snapshot is truncated: " + path);
+            }
+
+            //the mappings are limited to 2 GB, so large snapshots are read in segments of whole entries
+            long segmentBytes = (Integer.MAX_VALUE / SNAPSHOT_ENTRY_BYTES) * (long) SNAPSHOT_ENTRY_BYTES;
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((entries * SNAPSHOT_ENTRY_BYTES + segmentBytes - 1) / segmentBytes)];
+            CRC32 crc = new CRC32();
+            for(int i = 0; i < segments.length; i++) {
+                long offset = SNAPSHOT_HEADER_BYTES + i * segmentBytes;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(segmentBytes, channel.size() - offset));
+                crc.update(segments[i].duplicate());
+            }
+            if(crc.getValue() != header.getLong(24)) {
+                throw new IOException("Table snapshot is corrupt: " + path);
+            }
+
+            long added = 0;
+            for(MappedByteBuffer segment : segments) {
+                for(int offset = 0; offset < segment.limit(); offset += SNAPSHOT_ENTRY_BYTES) {
+                    if(restore(segment.getLong(offset), segment.getInt(offset + 8))) {
+                        added++;
+                    }
+                }
+            }
+            return added;
+        }
+    }
+
+    /**
+     * Puts a saved entry into an empty slot of its bucket
+     * @param key : The hash key of the entry
+     * @param entry : The data word of the entry
+     * @return : true if the entry was added, false if its bucket is full or it is already stored
+     */
+    private boolean restore(long key, int entry) {
+        int index = index(key);
+        if(entry == 0) {
+            return false;
+        }
+
+        for(int i = index; i < index + (1 << bucketShift); i++) {
+            int stored = data[i];
+            if(stored != 0 && (keys[i] ^ stored) == key) {
+                return false;
+            }
+            if(stored == 0) {
+                keys[i] = key ^ entry;
+                data[i] = entry;
+                ages[i] = generation;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of slots
+     * @return : the capacity of the table in entries
+     */
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    /**
+     * Gets the score of a data word
+     * @param entry : a data word returned by probe
+     * @return : the stored score
+     */
+    public static int score(int entry) {
+        return (entry & ((1 << SCORE_BITS) - 1)) - SCORE_BIAS;
+    }
+
+    /**
+     * Gets the depth of a data word
+     * @param entry : a data word returned by probe
+     * @return : the stored remaining depth
+     */
+    public static int depth(int entry) {
+        return (entry >>> DEPTH_SHIFT) & 0x3F;
+    }
+
+    /**
+     * Gets the bound type of a data word
+     * @param entry : a data word returned by probe
+     * @return : EXACT, LOWER_BOUND or UPPER_BOUND
+     */
+    public static int bound(int entry) {
+        return (entry >>> BOUND_SHIFT) & 0x3;
+    }
+
+    /**
+     * Gets the best move of a data word
+     * @param entry : a data word returned by probe
+     * @return : the stored pillar index, -1 if none was stored
+     */
+    public static int move(int entry) {
+        return ((entry >>> MOVE_SHIFT) & 0x1F) - 1;
+    }
+
+    /**
+     * Packs a search result into a data word
+     * @param depth : The remaining depth, capped at 63
+     * @param bound : The bound type
+     * @param score : The score, must fit into 18 signed bits
+     * @param move : The pillar index of the best move, -1 if unknown
+     * @return : the data word, never 0
+     */
+    private static int pack(int depth, int bound, int score, int move) {
+        return (score + SCORE_BIAS)
+                | (Math.min(depth, 0x3F) << DEPTH_SHIFT)
+                | (bound << BOUND_SHIFT)
+                | ((move + 1) << MOVE_SHIFT);
+    }
+
+    /**
+     * Calculates the first slot of the bucket of a key
+     * @param key : The hash key
+     * @return : the slot index
+     */
+    private int index(long key) {
+        return ((int) (key ^ (key >>> 32)) & bucketMask) << bucketShift;
+    }
+}